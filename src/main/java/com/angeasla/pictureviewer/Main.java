@@ -1,7 +1,22 @@
 package com.angeasla.pictureviewer;
 
+import com.angeasla.pictureviewer.cli.BenchCommand;
+import com.angeasla.pictureviewer.cli.ExportCommand;
+
+import java.util.Arrays;
+
 public class Main {
     public static void main(String[] args) {
+        // "export" runs the headless batch exporter instead of the GUI, so it works without a display.
+        if (args.length > 0 && args[0].equals("export")) {
+            System.setProperty("java.awt.headless", "true");
+            System.exit(ExportCommand.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+        // "bench" times the image decoders on sample files, also without a display.
+        if (args.length > 0 && args[0].equals("bench")) {
+            System.setProperty("java.awt.headless", "true");
+            System.exit(BenchCommand.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
         PictureViewerApp.main(args);
     }
 }
@@ -5,16 +5,28 @@ import javafx.application.Application;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
+import javafx.scene.input.MouseEvent;
 import javafx.scene.text.Font;
+import javafx.stage.Screen;
 import javafx.stage.Stage;
+import com.angeasla.pictureviewer.model.ArchiveFileSystems;
+import com.angeasla.pictureviewer.model.DecodedImageCache;
 import com.angeasla.pictureviewer.model.DirectoryNavigator;
+import com.angeasla.pictureviewer.model.FolderStatistics;
+import com.angeasla.pictureviewer.ui.CompareView;
+import com.angeasla.pictureviewer.ui.HistogramPanel;
 import com.angeasla.pictureviewer.ui.ImageDisplayPane;
 import com.angeasla.pictureviewer.ui.MainView;
+import com.angeasla.pictureviewer.ui.PathListCell;
+import com.angeasla.pictureviewer.util.FxStallWatchdog;
+import com.angeasla.pictureviewer.util.MemoryGovernor;
+import com.angeasla.pictureviewer.util.PixelBufferPool;
+import com.angeasla.pictureviewer.util.PooledImageDecoder;
 import java.nio.file.*;
 import java.util.Objects;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main application class for the Picture Viewer.
@@ -30,7 +42,12 @@ public class PictureViewerApp extends Application {
      * ExecutorService for loading files in a background thread to prevent UI freezing.
      * Uses a fixed thread pool of 2 threads to manage concurrent operations efficiently.
      */
-    private final ExecutorService loader = Executors.newFixedThreadPool(2);
+    private final ThreadPoolExecutor loader = new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    /**
+     * Counts the images in the folders shown in the list, on its own low-priority threads
+     * that give way whenever the loader is busy.
+     */
+    private final FolderStatistics folderStatistics = new FolderStatistics(() -> loader.getActiveCount() > 0);
     /**
      * ListView to display files and directories in the current path.
      * It shows a list of Path objects representing files and subdirectories.
@@ -41,6 +58,10 @@ public class PictureViewerApp extends Application {
      * Provides visual feedback to the user about their current location in the file system.
      */
     private final Label currentPathLabel = new Label();
+    /**
+     * Watches the JavaFX Application Thread for stalls and logs where they happen.
+     */
+    private final FxStallWatchdog stallWatchdog = new FxStallWatchdog();
 
     // --- Component References ---
     /**
@@ -61,13 +82,10 @@ public class PictureViewerApp extends Application {
      * and coordinating between the UI (View) and the data/logic (Model).
      */
     private AppController appController;
-
     /**
-     * Static Image loaded once for the folder icon, used in the ListView to visually
-     * distinguish directories from files.
-     * The image file is expected to be in the 'src/main/resources' directory.
+     * The decoded previews and tiles shown by the compare view, which decodes tiles on its own threads.
      */
-    private static final Image FOLDER_ICON = new Image(Objects.requireNonNull(PictureViewerApp.class.getResourceAsStream("/folder_icon.png")));
+    private DecodedImageCache compareCache;
 
     /**
      * The main entry point for all JavaFX applications.
@@ -79,6 +97,20 @@ public class PictureViewerApp extends Application {
      */
     @Override
     public void start(Stage stage) {
+        // Start watching memory usage, and let it shed the idle decode buffers first when memory runs low.
+        MemoryGovernor.shared().register(MemoryGovernor.CacheTier.PREFETCHED_IMAGES, "idle pixel buffers",
+                () -> PixelBufferPool.shared().trimTo(0));
+        MemoryGovernor.shared().register(MemoryGovernor.CacheTier.PREFETCHED_IMAGES, "decode scratch images",
+                PooledImageDecoder::clearScratch);
+        // Open archives keep their central directory in memory; stop caching them, so that only archives
+        // still in use (in the list, the history, a slideshow or a pending decode) stay open.
+        MemoryGovernor.shared().register(MemoryGovernor.CacheTier.LISTING_CACHES, "open archives", () -> {
+            ArchiveFileSystems.releaseCache();
+            return 0;
+        });
+        MemoryGovernor.shared().start();
+        stallWatchdog.start();
+
         // Load custom font from resources for consistent application styling.
         Font.loadFont(getClass().getResourceAsStream("/PressStart2P-Regular.ttf"), 10);
 
@@ -92,9 +124,26 @@ public class PictureViewerApp extends Application {
 
         // Initialize UI buttons. These are local to 'start' as their layout is managed by MainView,
         // and their actions are delegated to AppController.
+        final Button backBtn = new Button("◀");
+        final Button forwardBtn = new Button("▶");
         final Button upBtn = new Button("⬆ Up");
         final Button aboutBtn = new Button("About");
         final Button fullscreenBtn = new Button("Full screen");
+        final Button slideshowBtn = new Button("Slideshow");
+        final Button adjustBtn = new Button("Adjust");
+        final Button histogramBtn = new Button("Histogram");
+        final Button compareBtn = new Button("Compare");
+
+        // The histogram panel follows whatever the ImageDisplayPane shows.
+        final HistogramPanel histogramPanel = new HistogramPanel(imageDisplayPane);
+
+        // The compare view's panes share one cache of screen-sized previews, decoded by the loader,
+        // and zoomed-in tiles, decoded on the cache's own threads.
+        Screen screen = Screen.getPrimary();
+        compareCache = new DecodedImageCache(loader,
+                (int) (screen.getBounds().getWidth() * screen.getOutputScaleX()),
+                (int) (screen.getBounds().getHeight() * screen.getOutputScaleY()));
+        final CompareView compareView = new CompareView(compareCache);
 
         // Initialize DirectoryNavigator, which handles file system operations.
         // It requires the ListView, currentPathLabel, and the ExecutorService for its operations.
@@ -102,14 +151,24 @@ public class PictureViewerApp extends Application {
 
         // Initialize AppController, connecting UI events to application logic.
         // It needs references to the model (directoryNavigator), view (imageDisplayPane),
-        // the primary stage (for dialogs/fullscreen), and specific buttons for programmatic firing.
-        appController = new AppController(directoryNavigator, imageDisplayPane, stage, upBtn);
+        // the primary stage (for dialogs/fullscreen), specific buttons for programmatic firing, the file list,
+        // and the ExecutorService for background image decoding.
+        appController = new AppController(directoryNavigator, imageDisplayPane, stage, upBtn, listView, loader);
 
         /* ---------- Set up Actions and Listeners via AppController ---------- */
         // Button actions are delegated to the AppController for centralized event handling logic.
+        backBtn.setOnAction(appController.getBackButtonAction());
+        forwardBtn.setOnAction(appController.getForwardButtonAction());
         upBtn.setOnAction(appController.getUpButtonAction());
         aboutBtn.setOnAction(appController.getAboutButtonAction());
         fullscreenBtn.setOnAction(appController.getFullscreenButtonAction(fullscreenBtn));
+        slideshowBtn.setOnAction(appController.getSlideshowButtonAction());
+        adjustBtn.setOnAction(appController.getAdjustButtonAction());
+        histogramBtn.setOnAction(appController.getHistogramButtonAction(histogramPanel));
+
+        // The history buttons are only enabled while there is somewhere to go.
+        backBtn.disableProperty().bind(directoryNavigator.canGoBackProperty().not());
+        forwardBtn.disableProperty().bind(directoryNavigator.canGoForwardProperty().not());
 
         // Listener for the stage's full-screen property to dynamically update the fullscreen button's text.
         // This listener remains here as it directly modifies a local UI component (fullscreenBtn's text).
@@ -124,41 +183,9 @@ public class PictureViewerApp extends Application {
         /* ---------- LIST VIEW CONFIGURATION AND LISTENERS ---------- */
         // Define how items in the ListView are displayed, including text and graphics.
         // This 'cell factory' creates custom ListCell instances for each item.
-        listView.setCellFactory(lv -> new ListCell<>() {
-            // ImageView instance for the folder icon, created once per cell for efficiency.
-            private final ImageView icon = new ImageView();
-
-            @Override
-            protected void updateItem(Path item, boolean empty) {
-                super.updateItem(item, empty);
-                if (empty || item == null) {
-                    // Clear text and graphic if the cell is empty or has no item.
-                    setText(null);
-                    setGraphic(null);
-                } else {
-                    // Set the cell's text based on the Path item.
-                    // Root paths (e.g., "C:\") are displayed as is, while others show only the file name.
-                    if (item.getParent() == null && item.getRoot() != null) {
-                        setText(item.toString());
-                    } else if (item.getFileName() != null) {
-                        setText(item.getFileName().toString());
-                    } else {
-                        setText(item.toString());
-                    }
-
-                    // Set the cell's graphic (icon).
-                    // If the item is a directory, display the FOLDER_ICON; otherwise, clear the graphic.
-                    if (Files.isDirectory(item)) {
-                        icon.setImage(FOLDER_ICON);
-                        icon.setFitWidth(16);  // Set desired width for the icon.
-                        icon.setFitHeight(16); // Set desired height for the icon.
-                        setGraphic(icon);      // Apply the icon to the cell.
-                    } else {
-                        setGraphic(null); // No icon for regular files.
-                    }
-                }
-            }
-        });
+        listView.setCellFactory(lv -> new PathListCell(folderStatistics));
+        // Several images can be selected with Ctrl+click or Shift+click, to compare them.
+        listView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
 
         // Delegate ListView selection and key/mouse events to the AppController.
         listView.getSelectionModel().selectedItemProperty().addListener(appController.getListViewSelectionListener());
@@ -167,7 +194,10 @@ public class PictureViewerApp extends Application {
 
         // Initialize MainView, which constructs the primary layout (BorderPane) of the application.
         // It receives the necessary UI components to arrange them.
-        mainView = new MainView(currentPathLabel, upBtn, listView, aboutBtn, fullscreenBtn, imageDisplayPane.getImageScrollPane());
+        mainView = new MainView(currentPathLabel, backBtn, forwardBtn, upBtn, listView, aboutBtn, fullscreenBtn, slideshowBtn, adjustBtn, histogramBtn,
+                compareBtn, histogramPanel.getPane(), imageDisplayPane.getImageScrollPane());
+        // The compare view swaps itself with the single image display in the MainView's center.
+        compareBtn.setOnAction(appController.getCompareButtonAction(compareView, mainView, compareBtn));
 
         /* ---------- APPLICATION STARTUP ---------- */
         // Populate the file list with root directories on application start.
@@ -179,6 +209,8 @@ public class PictureViewerApp extends Application {
 
         // Delegate global scene key press events (e.g., Backspace, Easter Egg code) to the AppController.
         scene.setOnKeyPressed(appController.getSceneKeyHandler());
+        // The mouse's back and forward side buttons move through the navigation history.
+        scene.addEventFilter(MouseEvent.MOUSE_PRESSED, appController.getSceneMouseHandler());
 
         // Set the scene on the primary stage and configure its title.
         stage.setScene(scene);
@@ -206,6 +238,18 @@ public class PictureViewerApp extends Application {
     @Override
     public void stop() {
         loader.shutdown(); // Shuts down the background thread pool, completing pending tasks.
+        folderStatistics.shutdown();
+        if (compareCache != null) {
+            compareCache.shutdown();
+        }
+        MemoryGovernor.shared().stop();
+        stallWatchdog.stop();
+        ArchiveFileSystems.closeAll();
+        // Usage statistics for tuning the pool and -Xmx, only when asked for with -Dpictureviewer.diagnostics=true.
+        if (Boolean.getBoolean("pictureviewer.diagnostics")) {
+            System.err.println("Pixel buffer pool: " + PixelBufferPool.shared().getStats());
+            System.err.println("Memory governor: " + MemoryGovernor.shared().getStats());
+        }
     }
 
     /**
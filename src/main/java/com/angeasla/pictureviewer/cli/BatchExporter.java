@@ -0,0 +1,416 @@
+package com.angeasla.pictureviewer.cli;
+
+import com.angeasla.pictureviewer.codec.DecodeRequest;
+import com.angeasla.pictureviewer.codec.DecodedImage;
+import com.angeasla.pictureviewer.codec.DecoderRegistry;
+import com.angeasla.pictureviewer.codec.ImageDecoder;
+import com.angeasla.pictureviewer.codec.ImageSource;
+import com.angeasla.pictureviewer.util.ImageUtils;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exports resized copies of every image under a source directory into a destination directory,
+ * keeping the relative folder structure.
+ * <p>
+ * Work flows through a bounded pipeline: reader threads load file bytes, CPU workers (one per core)
+ * decode, scale and encode, and writer threads store the result. The queues between the stages are bounded,
+ * so fast readers block instead of filling the heap when the CPU stage falls behind.
+ * Decode, scale and encode share one stage so that full-size bitmaps never wait in a queue.
+ * <p>
+ * Outputs are written to a temporary file and atomically moved into place, so an interrupted run never
+ * leaves a truncated image behind. Re-running the same export skips images whose output is already newer
+ * than the source, which resumes an interrupted run. The export settings are kept in a small manifest in the
+ * destination directory, so outputs written with other settings are exported again.
+ * <p>
+ * Outputs are named after their source with the output format's extension. Sources that would share an output
+ * name, such as {@code a.jpg} and {@code a.png}, keep their own extension too, e.g. {@code a.png.jpg}.
+ * <p>
+ * Only uses the image decoders, ImageIO and java.nio, so it runs without a display.
+ */
+public class BatchExporter {
+
+    private static final int IO_THREADS = 2;
+    private static final String PART_SUFFIX = ".part";
+    private static final String MANIFEST = ".picture-viewer-export"; // Settings of the outputs in the target directory.
+
+    private final Path sourceRoot;
+    private final Path targetRoot;
+    private final int maxSize;
+    private final String format;
+    private final float quality;
+    private final int cpuThreads;
+    private long settingsSince; // Outputs older than this were written with other settings.
+
+    private final AtomicInteger exported = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    /**
+     * A source image and where its exported copy goes.
+     */
+    private record Job(Path source, Path target) {
+    }
+
+    /**
+     * A job together with the bytes flowing between two pipeline stages. A null job marks the end of the stream.
+     */
+    private record Payload(Job job, byte[] bytes) {
+        static final Payload END = new Payload(null, null);
+    }
+
+    /**
+     * Constructs a BatchExporter.
+     *
+     * @param sourceRoot The directory to export images from, searched recursively.
+     * @param targetRoot The directory to write the exported images to.
+     * @param maxSize    The maximum width and height of exported images, in pixels. Smaller images are not enlarged.
+     * @param format     The ImageIO output format name, e.g. "jpg" or "png".
+     * @param quality    Compression quality between 0 and 1, for formats that support it.
+     * @param cpuThreads The number of decode/scale/encode workers.
+     */
+    public BatchExporter(Path sourceRoot, Path targetRoot, int maxSize, String format, float quality, int cpuThreads) {
+        this.sourceRoot = sourceRoot;
+        this.targetRoot = targetRoot;
+        this.maxSize = maxSize;
+        this.format = format.toLowerCase(Locale.ROOT);
+        this.quality = quality;
+        this.cpuThreads = Math.max(1, cpuThreads);
+    }
+
+    /**
+     * Runs the export and prints progress and throughput to standard output.
+     *
+     * @return The number of images that failed to export.
+     * @throws IOException          If the source directory cannot be walked.
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the pipeline.
+     */
+    public int run() throws IOException, InterruptedException {
+        List<Path> sources = new ArrayList<>();
+        collectImages(sourceRoot, sources);
+        List<Job> jobs = assignTargets(sources);
+        settingsSince = updateManifest();
+        System.out.println("Exporting " + jobs.size() + " images from " + sourceRoot + " to " + targetRoot
+                + " (max " + maxSize + " px, " + format + ", " + cpuThreads + " workers)");
+
+        BlockingQueue<Payload> decodeQueue = new ArrayBlockingQueue<>(cpuThreads * 2);
+        BlockingQueue<Payload> writeQueue = new ArrayBlockingQueue<>(cpuThreads * 2);
+        AtomicInteger nextJob = new AtomicInteger();
+        CountDownLatch readersDone = new CountDownLatch(IO_THREADS);
+        CountDownLatch workersDone = new CountDownLatch(cpuThreads);
+        CountDownLatch writersDone = new CountDownLatch(IO_THREADS);
+
+        long start = System.nanoTime();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "export-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleAtFixedRate(() -> printProgress(jobs.size(), start), 1, 1, TimeUnit.SECONDS);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < IO_THREADS; i++) {
+            threads.add(new Thread(() -> readStage(jobs, nextJob, decodeQueue, readersDone), "export-reader-" + i));
+            threads.add(new Thread(() -> writeStage(writeQueue, writersDone), "export-writer-" + i));
+        }
+        for (int i = 0; i < cpuThreads; i++) {
+            threads.add(new Thread(() -> processStage(decodeQueue, writeQueue, workersDone), "export-worker-" + i));
+        }
+        threads.forEach(Thread::start);
+
+        // Once a stage has drained, send one end marker per consumer of the next stage.
+        readersDone.await();
+        for (int i = 0; i < cpuThreads; i++) {
+            decodeQueue.put(Payload.END);
+        }
+        workersDone.await();
+        for (int i = 0; i < IO_THREADS; i++) {
+            writeQueue.put(Payload.END);
+        }
+        writersDone.await();
+        reporter.shutdownNow();
+
+        double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+        System.out.printf(Locale.ROOT,
+                "Done in %.1f s: %d exported, %d skipped, %d failed. %.1f images/s, %.1f MB/s read, %.1f MB/s written%n",
+                seconds, exported.get(), skipped.get(), failed.get(), exported.get() / seconds,
+                bytesRead.get() / 1e6 / seconds, bytesWritten.get() / 1e6 / seconds);
+        return failed.get();
+    }
+
+    /**
+     * Walks the source tree with the same listing the file browser uses, and collects the images.
+     * Symbolic links to directories are not followed, so a link loop cannot recurse forever.
+     */
+    private void collectImages(Path dir, List<Path> images) throws IOException {
+        for (Path p : ImageUtils.listDirectory(dir)) {
+            if (Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) {
+                collectImages(p, images);
+            } else if (ImageUtils.isImage(p)) { // Archives are listed too, but are not exported.
+                images.add(p);
+            }
+        }
+    }
+
+    /**
+     * Records one job per image. Images whose output names would collide keep their own extension in the name,
+     * so that no two jobs write the same file.
+     */
+    private List<Job> assignTargets(List<Path> sources) {
+        Map<String, Integer> uses = new HashMap<>();
+        for (Path source : sources) {
+            uses.merge(collisionKey(plainTarget(source)), 1, Integer::sum);
+        }
+        List<Job> jobs = new ArrayList<>(sources.size());
+        for (Path source : sources) {
+            Path target = plainTarget(source);
+            if (uses.get(collisionKey(target)) > 1) {
+                target = target.resolveSibling(source.getFileName() + "." + format);
+            }
+            jobs.add(new Job(source, target));
+        }
+        return jobs;
+    }
+
+    /**
+     * Returns the output path of an image with its extension replaced by the output format's.
+     */
+    private Path plainTarget(Path source) {
+        Path relative = sourceRoot.relativize(source);
+        String name = relative.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String targetName = (dot > 0 ? name.substring(0, dot) : name) + "." + format;
+        return targetRoot.resolve(relative).resolveSibling(targetName);
+    }
+
+    /**
+     * Compares output paths without case, as case-insensitive file systems do.
+     */
+    private static String collisionKey(Path target) {
+        return target.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Writes the export settings to the manifest in the target directory, unless they are already recorded there.
+     * @return The time since which outputs have been written with the current settings, in milliseconds.
+     */
+    private long updateManifest() throws IOException {
+        Path manifest = targetRoot.resolve(MANIFEST);
+        Properties settings = new Properties();
+        settings.setProperty("maxSize", String.valueOf(maxSize));
+        settings.setProperty("format", format);
+        settings.setProperty("quality", String.valueOf(quality));
+        if (Files.isRegularFile(manifest)) {
+            Properties recorded = new Properties();
+            try (Reader in = Files.newBufferedReader(manifest)) {
+                recorded.load(in);
+            }
+            String since = recorded.getProperty("since");
+            recorded.remove("since");
+            if (recorded.equals(settings) && since != null) {
+                try {
+                    return Long.parseLong(since);
+                } catch (NumberFormatException e) {
+                    // Rewrite the damaged manifest below.
+                }
+            }
+        }
+        // New settings: outputs from earlier runs are out of date. Rounded down, as some file systems store whole seconds.
+        long since = System.currentTimeMillis() / 1000 * 1000;
+        settings.setProperty("since", String.valueOf(since));
+        Files.createDirectories(targetRoot);
+        try (Writer out = Files.newBufferedWriter(manifest)) {
+            settings.store(out, "picture-viewer export settings");
+        }
+        return since;
+    }
+
+    private void readStage(List<Job> jobs, AtomicInteger nextJob, BlockingQueue<Payload> out, CountDownLatch done) {
+        try {
+            int index;
+            while ((index = nextJob.getAndIncrement()) < jobs.size()) {
+                Job job = jobs.get(index);
+                try {
+                    if (isUpToDate(job)) {
+                        skipped.incrementAndGet();
+                        continue;
+                    }
+                    byte[] bytes = Files.readAllBytes(job.source());
+                    bytesRead.addAndGet(bytes.length);
+                    out.put(new Payload(job, bytes)); // Blocks while the workers are behind.
+                } catch (IOException e) {
+                    fail(job, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            done.countDown();
+        }
+    }
+
+    private void processStage(BlockingQueue<Payload> in, BlockingQueue<Payload> out, CountDownLatch done) {
+        try {
+            Payload payload;
+            while ((payload = in.take()) != Payload.END) {
+                try {
+                    // Decoders may reduce the image while decoding, down to just above the export size.
+                    DecodedImage decoded = DecoderRegistry.shared().decode(
+                            ImageSource.of(payload.job().source().getFileName().toString(), payload.bytes()),
+                            DecodeRequest.contain(maxSize, maxSize), ImageDecoder.Destination.NEW);
+                    BufferedImage scaled = scale(decoded);
+                    out.put(new Payload(payload.job(), encode(scaled)));
+                } catch (IOException | RuntimeException | Error e) {
+                    // Errors such as running out of memory on a huge source fail only that image: a dead worker
+                    // would leave the readers blocked on a full queue.
+                    fail(payload.job(), e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            done.countDown();
+        }
+    }
+
+    private void writeStage(BlockingQueue<Payload> in, CountDownLatch done) {
+        try {
+            Payload payload;
+            while ((payload = in.take()) != Payload.END) {
+                Path target = payload.job().target();
+                Path part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+                try {
+                    Files.createDirectories(target.getParent());
+                    Files.write(part, payload.bytes());
+                    Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    bytesWritten.addAndGet(payload.bytes().length);
+                    exported.incrementAndGet();
+                } catch (IOException e) {
+                    fail(payload.job(), e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            done.countDown();
+        }
+    }
+
+    /**
+     * Checks whether a previous run already exported this image.
+     */
+    private boolean isUpToDate(Job job) throws IOException {
+        if (!Files.isRegularFile(job.target())) {
+            return false;
+        }
+        long written = Files.getLastModifiedTime(job.target()).toMillis();
+        return written >= settingsSince && written >= Files.getLastModifiedTime(job.source()).toMillis();
+    }
+
+    /**
+     * Scales an image to fit within maxSize, halving repeatedly before the final step
+     * so that large reductions keep their quality with bilinear filtering.
+     * The target size is computed from the full-resolution size, so reduced decoding does not change it.
+     */
+    private BufferedImage scale(DecodedImage decoded) {
+        BufferedImage src = decoded.image();
+        int w = decoded.width();
+        int h = decoded.height();
+        double ratio = Math.min(1.0, (double) maxSize / Math.max(decoded.sourceWidth(), decoded.sourceHeight()));
+        int targetW = Math.min(w, Math.max(1, (int) Math.round(decoded.sourceWidth() * ratio)));
+        int targetH = Math.min(h, Math.max(1, (int) Math.round(decoded.sourceHeight() * ratio)));
+        // JPEG has no alpha channel, so flatten to RGB for formats that cannot store it.
+        int type = supportsAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage current = src;
+        do {
+            w = Math.max(targetW, w / 2);
+            h = Math.max(targetH, h / 2);
+            BufferedImage next = new BufferedImage(w, h, type);
+            Graphics2D g = next.createGraphics();
+            if (type == BufferedImage.TYPE_INT_RGB) {
+                // Flattened transparent areas would otherwise turn black.
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, w, h);
+            }
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(current, 0, 0, w, h, null);
+            g.dispose();
+            current = next;
+        } while (w != targetW || h != targetH);
+        return current;
+    }
+
+    private byte[] encode(BufferedImage image) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IOException("No image writer for format: " + format);
+        }
+        ImageWriter writer = writers.next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if (param.getCompressionType() == null) {
+                    param.setCompressionType(param.getCompressionTypes()[0]);
+                }
+                param.setCompressionQuality(quality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    private boolean supportsAlpha() {
+        return !format.equals("jpg") && !format.equals("jpeg") && !format.equals("bmp");
+    }
+
+    private void fail(Job job, Throwable e) {
+        failed.incrementAndGet();
+        System.err.println("Error exporting " + job.source() + " - " + e.getMessage());
+    }
+
+    private void printProgress(int total, long start) {
+        double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+        int done = exported.get() + skipped.get() + failed.get();
+        System.out.printf(Locale.ROOT, "%d/%d  %.1f images/s  %.1f MB/s%n",
+                done, total, exported.get() / seconds, bytesRead.get() / 1e6 / seconds);
+    }
+}
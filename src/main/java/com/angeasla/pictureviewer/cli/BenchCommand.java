@@ -0,0 +1,174 @@
+package com.angeasla.pictureviewer.cli;
+
+import com.angeasla.pictureviewer.codec.DecodeRequest;
+import com.angeasla.pictureviewer.codec.DecodedImage;
+import com.angeasla.pictureviewer.codec.DecoderRegistry;
+import com.angeasla.pictureviewer.codec.ImageDecoder;
+import com.angeasla.pictureviewer.codec.ImageFormat;
+import com.angeasla.pictureviewer.codec.ImageSource;
+import com.angeasla.pictureviewer.codec.UnsupportedImageException;
+import com.angeasla.pictureviewer.util.ImageUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Times every installed decoder on sample images at full, 1/2, 1/4 and 1/8 scale, so the fastest back end
+ * per format can be chosen for the machine it runs on.
+ * <p>
+ * Files are read into memory first, so only decoding is timed. Each measurement is the median of several runs
+ * after a warm-up run. The report ends with the {@code pictureviewer.decoder.<format>} setting that puts the
+ * fastest decoders first.
+ * <p>
+ * Usage: {@code picture-viewer bench [--runs N] FILE|DIR...}
+ */
+public class BenchCommand {
+
+    private static final String USAGE = "Usage: picture-viewer bench [--runs N] FILE|DIR...";
+    private static final int[] SCALES = {1, 2, 4, 8};
+
+    /**
+     * Runs the bench command.
+     *
+     * @param args The arguments following the {@code bench} keyword.
+     * @return The process exit code: 0 on success, 1 if no image could be decoded, 2 on invalid usage.
+     */
+    public static int run(String[] args) {
+        int runs = 5;
+        List<Path> inputs = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--runs")) {
+                    runs = Integer.parseInt(args[++i]);
+                } else if (args[i].startsWith("--")) {
+                    System.err.println("Unknown option: " + args[i]);
+                    System.err.println(USAGE);
+                    return 2;
+                } else {
+                    inputs.add(Path.of(args[i]));
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            System.err.println("Invalid arguments: " + e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+        if (inputs.isEmpty() || runs <= 0) {
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        List<Path> files = new ArrayList<>();
+        for (Path input : inputs) {
+            if (Files.isDirectory(input)) {
+                try (Stream<Path> walk = Files.walk(input)) {
+                    walk.filter(p -> Files.isRegularFile(p) && ImageUtils.isImage(p)).sorted().forEach(files::add);
+                } catch (IOException e) {
+                    System.err.println("Error listing directory: " + input + " - " + e.getMessage());
+                }
+            } else {
+                files.add(input);
+            }
+        }
+
+        DecoderRegistry registry = DecoderRegistry.shared();
+        // Wins per format and decoder, counting one per file and scale where the decoder was the fastest of several.
+        Map<ImageFormat, Map<String, Integer>> wins = new EnumMap<>(ImageFormat.class);
+        int benchmarked = 0;
+        for (Path file : files) {
+            byte[] bytes;
+            ImageFormat format;
+            DecodedImage full;
+            ImageSource source;
+            try {
+                bytes = Files.readAllBytes(file);
+                format = ImageFormat.probe(bytes, bytes.length);
+                source = ImageSource.of(file.getFileName().toString(), bytes);
+                full = registry.decode(source, DecodeRequest.full(), ImageDecoder.Destination.NEW);
+            } catch (IOException e) {
+                System.err.println("Error reading image: " + file + " - " + e.getMessage());
+                continue;
+            }
+            benchmarked++;
+
+            List<ImageDecoder> decoders = registry.all().stream().filter(d -> d.canDecode(format)).toList();
+            System.out.printf(Locale.ROOT, "%s (%s, %dx%d, %d KB)%n", file, format, full.sourceWidth(), full.sourceHeight(), bytes.length / 1024);
+            StringBuilder header = new StringBuilder(String.format(Locale.ROOT, "  %-6s", "scale"));
+            for (ImageDecoder decoder : decoders) {
+                header.append(String.format(Locale.ROOT, "%14s", decoder.getName()));
+            }
+            System.out.println(header);
+
+            for (int scale : SCALES) {
+                DecodeRequest request = DecodeRequest.cover(Math.max(1, full.sourceWidth() / scale), Math.max(1, full.sourceHeight() / scale));
+                StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "  %-6s", "1/" + scale));
+                String fastest = null;
+                double fastestMillis = Double.MAX_VALUE;
+                int timed = 0;
+                for (ImageDecoder decoder : decoders) {
+                    double millis = time(decoder, source, request, runs);
+                    line.append(millis < 0 ? String.format(Locale.ROOT, "%14s", "-") : String.format(Locale.ROOT, "%11.1f ms", millis));
+                    if (millis >= 0) {
+                        timed++;
+                        if (millis < fastestMillis) {
+                            fastestMillis = millis;
+                            fastest = decoder.getName();
+                        }
+                    }
+                }
+                System.out.println(line);
+                if (timed > 1) { // Only a comparison says anything about the order.
+                    wins.computeIfAbsent(format, f -> new LinkedHashMap<>()).merge(fastest, 1, Integer::sum);
+                }
+            }
+        }
+
+        if (benchmarked == 0) {
+            System.err.println("No images could be decoded.");
+            return 1;
+        }
+        System.out.println();
+        System.out.println("Fastest decoders (\"-\" above means the decoder declined, so the next one is used):");
+        for (Map.Entry<ImageFormat, Map<String, Integer>> entry : wins.entrySet()) {
+            List<String> order = entry.getValue().entrySet().stream()
+                    .sorted((a, b) -> b.getValue() - a.getValue())
+                    .map(Map.Entry::getKey)
+                    .toList();
+            System.out.printf(Locale.ROOT, "  %-5s -Dpictureviewer.decoder.%s=%s   (wins: %s)%n", entry.getKey(),
+                    entry.getKey().name().toLowerCase(Locale.ROOT), String.join(",", order), entry.getValue());
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the median decode time in milliseconds over the given number of runs after one warm-up run,
+     * or -1 if the decoder declines the request or fails on it.
+     */
+    private static double time(ImageDecoder decoder, ImageSource source, DecodeRequest request, int runs) {
+        double[] millis = new double[runs];
+        try {
+            decoder.decode(source, request, ImageDecoder.Destination.NEW); // Warm-up.
+            for (int i = 0; i < runs; i++) {
+                long start = System.nanoTime();
+                decoder.decode(source, request, ImageDecoder.Destination.NEW);
+                millis[i] = (System.nanoTime() - start) / 1_000_000.0;
+            }
+        } catch (UnsupportedImageException e) {
+            return -1;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error decoding with " + decoder.getName() + ": " + source.name() + " - " + e.getMessage());
+            return -1;
+        }
+        Arrays.sort(millis);
+        return millis[runs / 2];
+    }
+}
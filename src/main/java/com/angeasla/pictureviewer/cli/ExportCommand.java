@@ -0,0 +1,83 @@
+package com.angeasla.pictureviewer.cli;
+
+import javax.imageio.ImageIO;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Parses the arguments of the headless {@code export} command and runs a {@link BatchExporter}.
+ * <p>
+ * Usage: {@code picture-viewer export [--max PIXELS] [--format jpg|png|bmp] [--quality 0..1] [--threads N] SRC DST}
+ */
+public class ExportCommand {
+
+    private static final String USAGE =
+            "Usage: picture-viewer export [--max PIXELS] [--format jpg|png|bmp] [--quality 0..1] [--threads N] SRC DST";
+
+    /**
+     * Runs the export command.
+     *
+     * @param args The arguments following the {@code export} keyword.
+     * @return The process exit code: 0 on success, 1 if some images failed, 2 on invalid usage.
+     */
+    public static int run(String[] args) {
+        int maxSize = 2048;
+        String format = "jpg";
+        float quality = 0.85f;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path source = null;
+        Path target = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--max" -> maxSize = Integer.parseInt(args[++i]);
+                    case "--format" -> format = args[++i];
+                    case "--quality" -> quality = Float.parseFloat(args[++i]);
+                    case "--threads" -> threads = Integer.parseInt(args[++i]);
+                    default -> {
+                        if (args[i].startsWith("--")) {
+                            System.err.println("Unknown option: " + args[i]);
+                            System.err.println(USAGE);
+                            return 2;
+                        } else if (source == null) {
+                            source = Path.of(args[i]);
+                        } else if (target == null) {
+                            target = Path.of(args[i]);
+                        } else {
+                            System.err.println(USAGE);
+                            return 2;
+                        }
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            System.err.println("Invalid arguments: " + e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        if (source == null || target == null || maxSize <= 0 || quality < 0 || quality > 1) {
+            System.err.println(USAGE);
+            return 2;
+        }
+        if (!ImageIO.getImageWritersByFormatName(format.toLowerCase(Locale.ROOT)).hasNext()) {
+            System.err.println("Unsupported output format: " + format);
+            System.err.println(USAGE);
+            return 2;
+        }
+        if (!Files.isDirectory(source)) {
+            System.err.println("Source is not a directory: " + source);
+            return 2;
+        }
+
+        try {
+            int failures = new BatchExporter(source, target, maxSize, format, quality, threads).run();
+            return failures == 0 ? 0 : 1;
+        } catch (Exception e) {
+            System.err.println("Export failed: " + e.getMessage());
+            return 1;
+        }
+    }
+}
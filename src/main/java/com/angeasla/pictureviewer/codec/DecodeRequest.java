@@ -0,0 +1,96 @@
+package com.angeasla.pictureviewer.codec;
+
+import java.awt.Rectangle;
+
+/**
+ * What a caller needs from a decode: the size the result must reach and, optionally, a region of the image.
+ * Decoders may reduce the resolution while decoding as long as the result still reaches the requested size,
+ * so a request for a small preview of a large photo can be served without decoding every pixel.
+ *
+ * @param width  The width the result must reach, in pixels ({@link Integer#MAX_VALUE} for full resolution).
+ * @param height The height the result must reach, in pixels ({@link Integer#MAX_VALUE} for full resolution).
+ * @param fit    How width and height constrain the result.
+ * @param region The part of the image to decode, in full-resolution pixels, or null for the whole image.
+ */
+public record DecodeRequest(int width, int height, Fit fit, Rectangle region) {
+
+    /**
+     * How the requested size constrains the decoded size.
+     */
+    public enum Fit {
+        /** Both dimensions must reach the requested size, e.g. to fill a screen with room to zoom. */
+        COVER,
+        /** The image scaled to fit inside the requested size must not need enlarging, e.g. for thumbnails. */
+        CONTAIN
+    }
+
+    /**
+     * Returns a request for the whole image at full resolution.
+     * @return The request.
+     */
+    public static DecodeRequest full() {
+        return new DecodeRequest(Integer.MAX_VALUE, Integer.MAX_VALUE, Fit.COVER, null);
+    }
+
+    /**
+     * Returns a request for the whole image, at least as large as the given size in both dimensions.
+     * @param width  The minimum width.
+     * @param height The minimum height.
+     * @return The request.
+     */
+    public static DecodeRequest cover(int width, int height) {
+        return new DecodeRequest(width, height, Fit.COVER, null);
+    }
+
+    /**
+     * Returns a request for the whole image, large enough to be scaled down to fit inside the given size.
+     * @param width  The width of the box the image will be fitted into.
+     * @param height The height of the box the image will be fitted into.
+     * @return The request.
+     */
+    public static DecodeRequest contain(int width, int height) {
+        return new DecodeRequest(width, height, Fit.CONTAIN, null);
+    }
+
+    /**
+     * Returns this request restricted to a region of the image.
+     * @param region The region, in full-resolution pixels.
+     * @return The request.
+     */
+    public DecodeRequest withRegion(Rectangle region) {
+        return new DecodeRequest(width, height, fit, region);
+    }
+
+    /**
+     * Returns the part of an image this request covers, clipped to the image.
+     *
+     * @param imageWidth  The full width of the image.
+     * @param imageHeight The full height of the image.
+     * @return The region to decode, in full-resolution pixels.
+     * @throws IllegalArgumentException If the region lies outside the image.
+     */
+    public Rectangle regionWithin(int imageWidth, int imageHeight) {
+        Rectangle bounds = new Rectangle(0, 0, imageWidth, imageHeight);
+        if (region == null) {
+            return bounds;
+        }
+        Rectangle clipped = region.intersection(bounds);
+        if (clipped.isEmpty()) {
+            throw new IllegalArgumentException("Region " + region + " is outside the " + imageWidth + "x" + imageHeight + " image");
+        }
+        return clipped;
+    }
+
+    /**
+     * Returns the largest factor by which a source of the given size can be reduced while still satisfying this request.
+     *
+     * @param sourceWidth  The width of the part being decoded, in full-resolution pixels.
+     * @param sourceHeight The height of the part being decoded, in full-resolution pixels.
+     * @return The reduction factor, at least 1 (1 means full resolution).
+     */
+    public double maxReduction(int sourceWidth, int sourceHeight) {
+        double x = (double) sourceWidth / Math.max(1, width);
+        double y = (double) sourceHeight / Math.max(1, height);
+        return Math.max(1, fit == Fit.COVER ? Math.min(x, y) : Math.max(x, y));
+    }
+}
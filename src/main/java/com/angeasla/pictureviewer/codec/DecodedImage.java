@@ -0,0 +1,17 @@
+package com.angeasla.pictureviewer.codec;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The result of a decode. The pixels occupy the top-left width x height part of the image,
+ * which can be larger when a reused scratch image was decoded into.
+ *
+ * @param image       The image holding the pixels.
+ * @param width       The decoded width.
+ * @param height      The decoded height.
+ * @param sourceWidth The full-resolution width of the image file.
+ * @param sourceHeight The full-resolution height of the image file.
+ * @param decoder     The name of the decoder that produced it.
+ */
+public record DecodedImage(BufferedImage image, int width, int height, int sourceWidth, int sourceHeight, String decoder) {
+}
@@ -0,0 +1,122 @@
+package com.angeasla.pictureviewer.codec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Chooses a decoder for each image by its probed format and the size requested.
+ * <p>
+ * Decoders are tried in order: the built-in fast paths, then decoders provided through {@link ServiceLoader},
+ * then {@link ImageIODecoder}, which comes last so that every image ImageIO can read still opens.
+ * A decoder that cannot handle a particular file throws {@link UnsupportedImageException} and the next one is tried.
+ * <p>
+ * The order for a format can be changed with the system property {@code pictureviewer.decoder.<format>}, a
+ * comma-separated list of decoder names tried first, e.g. {@code -Dpictureviewer.decoder.jpeg=imageio}.
+ * The {@code bench} command measures which order is fastest on the current machine.
+ */
+public class DecoderRegistry {
+
+    private static final DecoderRegistry SHARED = new DecoderRegistry();
+
+    private final List<ImageDecoder> decoders = new CopyOnWriteArrayList<>();
+    private final ImageDecoder fallback = new ImageIODecoder();
+
+    private DecoderRegistry() {
+        decoders.add(new JpegDctDecoder());
+        try {
+            for (ImageDecoder decoder : ServiceLoader.load(ImageDecoder.class)) {
+                decoders.add(decoder);
+            }
+        } catch (ServiceConfigurationError e) {
+            System.err.println("Error loading image decoder plugins: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the application-wide registry.
+     * @return The shared DecoderRegistry.
+     */
+    public static DecoderRegistry shared() {
+        return SHARED;
+    }
+
+    /**
+     * Adds a decoder ahead of those already registered, so it is tried first for the formats it accepts.
+     * @param decoder The decoder to add.
+     */
+    public void register(ImageDecoder decoder) {
+        decoders.add(0, decoder);
+    }
+
+    /**
+     * Returns the decoders that will be tried for a format, in the order they will be tried.
+     * @param format The image format.
+     * @return The candidate decoders, including the ImageIO fallback (last unless a preference names it).
+     */
+    public List<ImageDecoder> candidates(ImageFormat format) {
+        List<ImageDecoder> ordered = new ArrayList<>();
+        String preference = System.getProperty("pictureviewer.decoder." + format.name().toLowerCase(Locale.ROOT));
+        if (preference != null) {
+            for (String name : preference.split(",")) {
+                for (ImageDecoder decoder : all()) {
+                    if (decoder.getName().equals(name.trim()) && decoder.canDecode(format) && !ordered.contains(decoder)) {
+                        ordered.add(decoder);
+                    }
+                }
+            }
+        }
+        for (ImageDecoder decoder : all()) {
+            if (decoder.canDecode(format) && !ordered.contains(decoder)) {
+                ordered.add(decoder);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Returns whether any installed decoder reads a format, e.g. whether an AVIF plugin is present.
+     * @param format The image format.
+     * @return true if images of this format can be decoded.
+     */
+    public boolean supports(ImageFormat format) {
+        return all().stream().anyMatch(decoder -> decoder.canDecode(format));
+    }
+
+    /**
+     * Returns every registered decoder, ending with the ImageIO fallback.
+     * @return The decoders.
+     */
+    public List<ImageDecoder> all() {
+        List<ImageDecoder> all = new ArrayList<>(decoders);
+        all.add(fallback);
+        return all;
+    }
+
+    /**
+     * Decodes an image with the first decoder that accepts it.
+     *
+     * @param source      The encoded image.
+     * @param request     The size and region needed.
+     * @param destination Allocates the image to decode into.
+     * @return The decoded image.
+     * @throws IOException If no decoder can read the image, or reading fails.
+     */
+    public DecodedImage decode(ImageSource source, DecodeRequest request, ImageDecoder.Destination destination) throws IOException {
+        ImageFormat format = ImageFormat.probe(source);
+        UnsupportedImageException unsupported = null;
+        for (ImageDecoder decoder : candidates(format)) {
+            try {
+                return decoder.decode(source, request, destination);
+            } catch (UnsupportedImageException e) {
+                unsupported = e; // Try the next decoder.
+            }
+        }
+        throw new UnsupportedImageException("Unsupported image format: " + source.name()
+                + (unsupported != null ? " (" + unsupported.getMessage() + ")" : ""));
+    }
+}
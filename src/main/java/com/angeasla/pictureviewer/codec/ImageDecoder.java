@@ -0,0 +1,63 @@
+package com.angeasla.pictureviewer.codec;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * A decoder back end, registered with {@link DecoderRegistry}.
+ * <p>
+ * Decoders are chosen per image by the format probed from the file's first bytes. A decoder that turns out not to
+ * support a particular file (e.g. a progressive JPEG) throws {@link UnsupportedImageException}, and the registry
+ * tries the next one, ending with the ImageIO decoder. Additional decoders, such as an AVIF decoder, can be
+ * provided by other modules through {@link java.util.ServiceLoader} as implementations of this interface.
+ */
+public interface ImageDecoder {
+
+    /**
+     * Allocates the image a decoder writes into, so callers can reuse scratch images and account for memory
+     * before anything is allocated.
+     */
+    @FunctionalInterface
+    interface Destination {
+        /** Allocates a new image every time. */
+        Destination NEW = (type, width, height) -> type == BufferedImage.TYPE_CUSTOM ? null : new BufferedImage(width, height, type);
+
+        /**
+         * Returns an image to decode into.
+         *
+         * @param type   The BufferedImage type the decoder produces, or {@link BufferedImage#TYPE_CUSTOM} if the decoder
+         *               must allocate an image of its own; the destination then only checks that it may go ahead.
+         * @param width  The decoded width.
+         * @param height The decoded height.
+         * @return An image of the given type at least width x height in size, or null to let the decoder allocate.
+         * @throws IOException If the decode must not go ahead, e.g. {@code MemoryGovernor.LoadRefusedException}.
+         */
+        BufferedImage allocate(int type, int width, int height) throws IOException;
+    }
+
+    /**
+     * Returns the decoder's name, used in benchmarks and in the {@code pictureviewer.decoder.<format>} preference.
+     * @return A short lower-case name.
+     */
+    String getName();
+
+    /**
+     * Returns whether this decoder handles a format at all. It may still reject individual files when decoding.
+     * @param format The probed format.
+     * @return true if the decoder should be tried for images of this format.
+     */
+    boolean canDecode(ImageFormat format);
+
+    /**
+     * Decodes an image, reducing its resolution as far as the request allows.
+     * The result may use only the top-left part of the image it returns, see {@link DecodedImage}.
+     *
+     * @param source      The encoded image.
+     * @param request     The size and region needed.
+     * @param destination Allocates the image to decode into.
+     * @return The decoded image.
+     * @throws UnsupportedImageException If this decoder cannot handle this particular image.
+     * @throws IOException If the image cannot be read or is corrupt.
+     */
+    DecodedImage decode(ImageSource source, DecodeRequest request, Destination destination) throws IOException;
+}
@@ -0,0 +1,79 @@
+package com.angeasla.pictureviewer.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Image file formats, identified by the magic bytes at the start of a file rather than by its extension.
+ */
+public enum ImageFormat {
+    JPEG, PNG, GIF, BMP, TIFF, WEBP, AVIF, HEIF, UNKNOWN;
+
+    /** Number of leading bytes {@link #probe(byte[], int)} needs to identify every known format. */
+    public static final int PROBE_BYTES = 16;
+
+    /**
+     * Identifies the format of an image source from its leading bytes.
+     *
+     * @param source The image to probe.
+     * @return The detected format, or {@link #UNKNOWN}.
+     * @throws IOException If the source cannot be read.
+     */
+    public static ImageFormat probe(ImageSource source) throws IOException {
+        try (InputStream in = source.open()) {
+            byte[] header = in.readNBytes(PROBE_BYTES);
+            return probe(header, header.length);
+        }
+    }
+
+    /**
+     * Identifies a format from the leading bytes of a file.
+     *
+     * @param header The first bytes of the file.
+     * @param length The number of valid bytes in header.
+     * @return The detected format, or {@link #UNKNOWN}.
+     */
+    public static ImageFormat probe(byte[] header, int length) {
+        if (matches(header, length, 0, 0xFF, 0xD8, 0xFF)) {
+            return JPEG;
+        }
+        if (matches(header, length, 0, 0x89, 'P', 'N', 'G')) {
+            return PNG;
+        }
+        if (matches(header, length, 0, 'G', 'I', 'F', '8')) {
+            return GIF;
+        }
+        if (matches(header, length, 0, 'B', 'M')) {
+            return BMP;
+        }
+        if (matches(header, length, 0, 'I', 'I', 0x2A, 0x00) || matches(header, length, 0, 'M', 'M', 0x00, 0x2A)) {
+            return TIFF;
+        }
+        if (matches(header, length, 0, 'R', 'I', 'F', 'F') && matches(header, length, 8, 'W', 'E', 'B', 'P')) {
+            return WEBP;
+        }
+        // ISO base media files: a box size, then "ftyp" and the major brand.
+        if (matches(header, length, 4, 'f', 't', 'y', 'p')) {
+            if (matches(header, length, 8, 'a', 'v', 'i', 'f') || matches(header, length, 8, 'a', 'v', 'i', 's')) {
+                return AVIF;
+            }
+            if (matches(header, length, 8, 'h', 'e', 'i', 'c') || matches(header, length, 8, 'h', 'e', 'i', 'x')
+                    || matches(header, length, 8, 'm', 'i', 'f', '1')) {
+                return HEIF;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    private static boolean matches(byte[] header, int length, int offset, int... expected) {
+        if (length < offset + expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if ((header[offset + i] & 0xFF) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
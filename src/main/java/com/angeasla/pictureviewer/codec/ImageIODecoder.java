@@ -0,0 +1,88 @@
+package com.angeasla.pictureviewer.codec;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Decodes any format an installed ImageIO plugin reads: the JDK's own JPEG, PNG, GIF, BMP, WBMP and TIFF readers,
+ * plus any third-party plugin on the module path (e.g. for WebP or AVIF). This is the fallback for every format.
+ * <p>
+ * Resolution is reduced by integer subsampling, which skips source pixels as they are read. That saves memory
+ * but not decoding time, since the whole file is still decompressed.
+ */
+public class ImageIODecoder implements ImageDecoder {
+
+    /** The name used in benchmarks and decoder preferences. */
+    public static final String NAME = "imageio";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean canDecode(ImageFormat format) {
+        // Unrecognised files are still offered to every plugin, which probe the content themselves.
+        return format == ImageFormat.UNKNOWN
+                || ImageIO.getImageReadersByFormatName(format.name().toLowerCase(Locale.ROOT)).hasNext();
+    }
+
+    @Override
+    public DecodedImage decode(ImageSource source, DecodeRequest request, Destination destination) throws IOException {
+        try (InputStream in = source.open();
+             ImageInputStream stream = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                throw new UnsupportedImageException("No ImageIO reader for " + source.name());
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                int srcWidth = reader.getWidth(0);
+                int srcHeight = reader.getHeight(0);
+                Rectangle region = request.regionWithin(srcWidth, srcHeight);
+                int subsampling = (int) request.maxReduction(region.width, region.height);
+                int width = (region.width + subsampling - 1) / subsampling;
+                int height = (region.height + subsampling - 1) / subsampling;
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (region.width != srcWidth || region.height != srcHeight) {
+                    param.setSourceRegion(region);
+                }
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                // Uncommon types are allocated by the reader, but the destination still gets to refuse the decode.
+                BufferedImage target = destination.allocate(commonType(reader.getImageTypes(0)), width, height);
+                if (target != null) {
+                    param.setDestination(target);
+                }
+                BufferedImage decoded = reader.read(0, param);
+                return new DecodedImage(decoded, width, height, srcWidth, srcHeight, NAME);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Returns the reader's preferred BufferedImage type if it is one of the common types a destination can supply,
+     * or TYPE_CUSTOM. Uncommon types (indexed, 16-bit, custom) are left for the reader to allocate itself.
+     */
+    private static int commonType(Iterator<ImageTypeSpecifier> types) {
+        if (!types.hasNext()) {
+            return BufferedImage.TYPE_CUSTOM;
+        }
+        int type = types.next().getBufferedImageType();
+        return type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR
+                || type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB
+                || type == BufferedImage.TYPE_BYTE_GRAY ? type : BufferedImage.TYPE_CUSTOM;
+    }
+}
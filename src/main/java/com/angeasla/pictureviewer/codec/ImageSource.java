@@ -0,0 +1,66 @@
+package com.angeasla.pictureviewer.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Where an image's encoded bytes come from: a file (including files inside archives) or bytes already in memory.
+ * A source can be opened any number of times, so the registry can probe it and then hand it to a decoder.
+ */
+public interface ImageSource {
+
+    /**
+     * Opens a new stream over the encoded image, positioned at its first byte.
+     * @return The stream, which the caller closes.
+     * @throws IOException If the source cannot be read.
+     */
+    InputStream open() throws IOException;
+
+    /**
+     * Returns a short name for messages, such as the file name.
+     * @return The name of the source.
+     */
+    String name();
+
+    /**
+     * Returns a source reading a file.
+     * @param path The image file, which may be inside an archive.
+     * @return The source.
+     */
+    static ImageSource of(Path path) {
+        return new ImageSource() {
+            @Override
+            public InputStream open() throws IOException {
+                return Files.newInputStream(path);
+            }
+
+            @Override
+            public String name() {
+                return String.valueOf(path.getFileName());
+            }
+        };
+    }
+
+    /**
+     * Returns a source over bytes already read into memory.
+     * @param name  A name for messages.
+     * @param bytes The encoded image.
+     * @return The source.
+     */
+    static ImageSource of(String name, byte[] bytes) {
+        return new ImageSource() {
+            @Override
+            public InputStream open() {
+                return new ByteArrayInputStream(bytes);
+            }
+
+            @Override
+            public String name() {
+                return name;
+            }
+        };
+    }
+}
@@ -0,0 +1,606 @@
+package com.angeasla.pictureviewer.codec;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes baseline JPEGs at 1/2, 1/4 or 1/8 scale directly from the DCT coefficients.
+ * <p>
+ * Each 8x8 block is reconstructed with a reduced inverse DCT over only its lowest-frequency coefficients:
+ * 4x4 for half size, 2x2 for quarter size, and just the DC value for an eighth. This skips most of the
+ * inverse-transform work and never produces the full-size pixels at all, which is where ImageIO's subsampling
+ * spends its time. When a region is requested, blocks outside it are entropy-decoded (the format requires it)
+ * but not transformed, and decoding stops after the last block row of the region.
+ * <p>
+ * Full-scale decodes, progressive and arithmetic-coded files, CMYK, multi-scan and truncated files are declined with
+ * {@link UnsupportedImageException}, so the registry falls back to ImageIO's native decoder for them.
+ * Embedded colour profiles are ignored, which is acceptable for previews.
+ */
+public class JpegDctDecoder implements ImageDecoder {
+
+    /** The name used in benchmarks and decoder preferences. */
+    public static final String NAME = "jpeg-dct";
+
+    // Natural (row-major) position of each coefficient in zig-zag order.
+    private static final int[] ZIGZAG = {
+            0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63};
+
+    // 4-point inverse DCT weights C(u)/2 * cos(u*pi/8): C0 for u = 0 and 2, C1 and C3 for the odd terms.
+    private static final float C0 = (float) (Math.sqrt(0.5) / 2);
+    private static final float C1 = (float) (Math.cos(Math.PI / 8) / 2);
+    private static final float C3 = (float) (Math.cos(3 * Math.PI / 8) / 2);
+
+    // Fixed-point YCbCr to RGB contributions, 16 fractional bits.
+    private static final int[] CR_R = new int[256];
+    private static final int[] CB_B = new int[256];
+    private static final int[] CR_G = new int[256];
+    private static final int[] CB_G = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int c = i - 128;
+            CR_R[i] = (int) Math.round(1.402 * 65536 * c);
+            CB_B[i] = (int) Math.round(1.772 * 65536 * c);
+            CR_G[i] = (int) Math.round(-0.714136 * 65536 * c);
+            CB_G[i] = (int) Math.round(-0.344136 * 65536 * c) + 32768; // Rounding for the sum with CR_G.
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean canDecode(ImageFormat format) {
+        return format == ImageFormat.JPEG;
+    }
+
+    @Override
+    public DecodedImage decode(ImageSource source, DecodeRequest request, Destination destination) throws IOException {
+        byte[] data;
+        try (InputStream in = source.open()) {
+            data = in.readAllBytes();
+        }
+        try {
+            return new Decoding(data, source.name()).run(request, destination);
+        } catch (IndexOutOfBoundsException | NegativeArraySizeException e) {
+            // Truncated or malformed segments: let ImageIO, which is more forgiving, have a go.
+            throw new UnsupportedImageException("Malformed JPEG " + source.name());
+        }
+    }
+
+    /**
+     * Returns the largest of the supported scale denominators (2, 4, 8) that the request allows, or 1 for none.
+     */
+    static int scaleFor(double maxReduction) {
+        for (int scale = 8; scale > 1; scale /= 2) {
+            if (scale <= maxReduction) {
+                return scale;
+            }
+        }
+        return 1;
+    }
+
+    /** A Huffman table with a 9-bit lookahead for the common short codes. */
+    private static final class Huffman {
+        private static final int LOOKAHEAD = 9;
+
+        final int[] lookup = new int[1 << LOOKAHEAD]; // (length << 8 | symbol), or 0 for longer codes.
+        final int[] maxCode = new int[18];
+        final int[] valueOffset = new int[17];
+        final byte[] symbols;
+
+        Huffman(byte[] counts, byte[] symbols) {
+            this.symbols = symbols;
+            int code = 0;
+            int k = 0;
+            for (int length = 1; length <= 16; length++) {
+                int count = counts[length - 1] & 0xFF;
+                valueOffset[length] = k - code;
+                for (int i = 0; i < count; i++, k++, code++) {
+                    if (length <= LOOKAHEAD) {
+                        int shift = LOOKAHEAD - length;
+                        for (int fill = 0; fill < 1 << shift; fill++) {
+                            lookup[(code << shift) | fill] = length << 8 | (symbols[k] & 0xFF);
+                        }
+                    }
+                }
+                maxCode[length] = count > 0 ? code - 1 : -1;
+                code <<= 1;
+            }
+            maxCode[17] = Integer.MAX_VALUE; // Sentinel for corrupt streams.
+        }
+    }
+
+    /** Entropy-coded segment reader that removes byte stuffing and stops at markers. */
+    private static final class BitReader {
+        private final byte[] data;
+        int pos;
+        private long bits;
+        private int count;
+        private int padding; // Zero bits at the end of the buffer that stand in for data past a marker or the end.
+
+        BitReader(byte[] data, int pos) {
+            this.data = data;
+            this.pos = pos;
+        }
+
+        private void fill() {
+            while (count <= 56) {
+                int b = 0;
+                if (pos >= data.length) {
+                    padding += 8;
+                } else {
+                    b = data[pos] & 0xFF;
+                    if (b == 0xFF) {
+                        int next = pos + 1 < data.length ? data[pos + 1] & 0xFF : 0;
+                        if (next == 0) {
+                            pos += 2;
+                        } else {
+                            b = 0; // A marker ends the segment: feed zeros without consuming it.
+                            padding += 8;
+                        }
+                    } else {
+                        pos++;
+                    }
+                }
+                bits |= (long) b << (56 - count);
+                count += 8;
+            }
+        }
+
+        int bits(int n) {
+            if (count < n) {
+                fill();
+            }
+            int value = (int) (bits >>> (64 - n));
+            bits <<= n;
+            count -= n;
+            return value;
+        }
+
+        int decode(Huffman table) throws UnsupportedImageException {
+            if (count < 16) {
+                fill();
+            }
+            int entry = table.lookup[(int) (bits >>> (64 - Huffman.LOOKAHEAD))];
+            if (entry != 0) {
+                int length = entry >> 8;
+                bits <<= length;
+                count -= length;
+                return entry & 0xFF;
+            }
+            int length = Huffman.LOOKAHEAD + 1;
+            int code = (int) (bits >>> (64 - length));
+            while (code > table.maxCode[length]) {
+                length++;
+                code = (int) (bits >>> (64 - length));
+            }
+            if (length > 16) {
+                throw new UnsupportedImageException("Corrupt Huffman code");
+            }
+            bits <<= length;
+            count -= length;
+            return table.symbols[code + table.valueOffset[length]] & 0xFF;
+        }
+
+        int receiveExtend(int size) {
+            if (size == 0) {
+                return 0;
+            }
+            int value = bits(size);
+            return value < 1 << (size - 1) ? value - (1 << size) + 1 : value;
+        }
+
+        /**
+         * Returns whether more bits were read than the segment holds, i.e. the file is truncated or corrupt.
+         */
+        boolean overrun() {
+            return count < padding;
+        }
+
+        /** Discards buffered bits and skips the restart marker that should follow. */
+        void restart() throws UnsupportedImageException {
+            bits = 0;
+            count = 0;
+            padding = 0;
+            if (pos + 1 < data.length && (data[pos] & 0xFF) == 0xFF && (data[pos + 1] & 0xF8) == 0xD0) {
+                pos += 2;
+            } else {
+                throw new UnsupportedImageException("Missing restart marker");
+            }
+        }
+    }
+
+    /** One colour component as described by the frame header. */
+    private static final class Component {
+        int id;
+        int h;
+        int v;
+        int quantTable;
+        Huffman dc;
+        Huffman ac;
+        int prediction;
+        byte[] plane; // One MCU row of this component at the reduced scale.
+        int planeWidth;
+        int[] columns; // Plane column sampled for each output column.
+    }
+
+    /** The state of decoding one file. */
+    private static final class Decoding {
+        private final byte[] data;
+        private final String name;
+        private final int[][] quant = new int[4][];
+        private final Huffman[] dcTables = new Huffman[4];
+        private final Huffman[] acTables = new Huffman[4];
+        private Component[] components;
+        private int width;
+        private int height;
+        private int restartInterval;
+        private int adobeTransform = -1;
+        private final float[] rows = new float[16]; // Intermediate result of the reduced inverse DCT.
+
+        Decoding(byte[] data, String name) {
+            this.data = data;
+            this.name = name;
+        }
+
+        DecodedImage run(DecodeRequest request, Destination destination) throws IOException {
+            if ((data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != 0xD8) {
+                throw new UnsupportedImageException(name + " is not a JPEG");
+            }
+            int pos = 2;
+            while (true) {
+                while ((data[pos] & 0xFF) != 0xFF) {
+                    pos++; // Tolerate padding between segments.
+                }
+                int marker = data[pos + 1] & 0xFF;
+                pos += 2;
+                if (marker == 0xFF || marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                    pos -= marker == 0xFF ? 1 : 0;
+                    continue;
+                }
+                if (marker == 0xD9) {
+                    throw new UnsupportedImageException(name + " has no image data");
+                }
+                int length = u16(pos);
+                int segment = pos + 2;
+                switch (marker) {
+                    case 0xC0, 0xC1 -> readFrame(segment);
+                    case 0xC4 -> readHuffmanTables(segment, pos + length);
+                    case 0xDB -> readQuantTables(segment, pos + length);
+                    case 0xDD -> restartInterval = u16(segment);
+                    case 0xEE -> {
+                        if (length >= 14 && data[segment] == 'A' && data[segment + 1] == 'd' && data[segment + 2] == 'o') {
+                            adobeTransform = data[segment + 11] & 0xFF;
+                        }
+                    }
+                    case 0xDA -> {
+                        return readScan(segment, pos + length, request, destination);
+                    }
+                    default -> {
+                        if (marker >= 0xC2 && marker <= 0xCF) {
+                            throw new UnsupportedImageException(name + " is not a baseline JPEG");
+                        }
+                    }
+                }
+                pos += length;
+            }
+        }
+
+        private int u16(int pos) {
+            return (data[pos] & 0xFF) << 8 | (data[pos + 1] & 0xFF);
+        }
+
+        private void readFrame(int pos) throws UnsupportedImageException {
+            if ((data[pos] & 0xFF) != 8) {
+                throw new UnsupportedImageException(name + " is not an 8-bit JPEG");
+            }
+            height = u16(pos + 1);
+            width = u16(pos + 3);
+            int count = data[pos + 5] & 0xFF;
+            if (count != 1 && count != 3 || width == 0 || height == 0) {
+                throw new UnsupportedImageException(name + " has " + count + " components or no size in its header");
+            }
+            components = new Component[count];
+            for (int i = 0; i < count; i++) {
+                Component c = new Component();
+                int at = pos + 6 + i * 3;
+                c.id = data[at] & 0xFF;
+                c.h = count == 1 ? 1 : (data[at + 1] & 0xFF) >> 4; // A single component is never interleaved.
+                c.v = count == 1 ? 1 : data[at + 1] & 0x0F;
+                c.quantTable = data[at + 2] & 0x03;
+                if (c.h < 1 || c.h > 4 || c.v < 1 || c.v > 4) {
+                    throw new UnsupportedImageException(name + " has invalid sampling factors");
+                }
+                components[i] = c;
+            }
+        }
+
+        private void readHuffmanTables(int pos, int end) {
+            while (pos < end) {
+                int info = data[pos] & 0xFF;
+                byte[] counts = new byte[16];
+                System.arraycopy(data, pos + 1, counts, 0, 16);
+                int total = 0;
+                for (byte count : counts) {
+                    total += count & 0xFF;
+                }
+                byte[] symbols = new byte[total];
+                System.arraycopy(data, pos + 17, symbols, 0, total);
+                Huffman table = new Huffman(counts, symbols);
+                if (info >> 4 == 0) {
+                    dcTables[info & 0x03] = table;
+                } else {
+                    acTables[info & 0x03] = table;
+                }
+                pos += 17 + total;
+            }
+        }
+
+        private void readQuantTables(int pos, int end) {
+            while (pos < end) {
+                int info = data[pos++] & 0xFF;
+                boolean wide = info >> 4 != 0;
+                int[] table = new int[64];
+                for (int k = 0; k < 64; k++) {
+                    table[k] = wide ? u16(pos + 2 * k) : data[pos + k] & 0xFF; // Kept in zig-zag order.
+                }
+                quant[info & 0x03] = table;
+                pos += wide ? 128 : 64;
+            }
+        }
+
+        private DecodedImage readScan(int pos, int end, DecodeRequest request, Destination destination) throws IOException {
+            if (components == null) {
+                throw new UnsupportedImageException(name + " has no frame header");
+            }
+            if ((data[pos] & 0xFF) != components.length) {
+                throw new UnsupportedImageException(name + " stores its components in separate scans");
+            }
+            for (int i = 0; i < components.length; i++) {
+                int id = data[pos + 1 + i * 2] & 0xFF;
+                int tables = data[pos + 2 + i * 2] & 0xFF;
+                Component c = components[i];
+                if (c.id != id) {
+                    throw new UnsupportedImageException(name + " has an unexpected scan order");
+                }
+                c.dc = dcTables[tables >> 4 & 0x03];
+                c.ac = acTables[tables & 0x03];
+                if (c.dc == null || c.ac == null || quant[c.quantTable] == null) {
+                    throw new UnsupportedImageException(name + " is missing a table");
+                }
+            }
+
+            Rectangle region = request.regionWithin(width, height);
+            int scale = scaleFor(request.maxReduction(region.width, region.height));
+            if (scale == 1) {
+                throw new UnsupportedImageException(name + " is needed at full scale");
+            }
+            int n = 8 / scale; // Output pixels per block side.
+
+            int hMax = 1;
+            int vMax = 1;
+            for (Component c : components) {
+                hMax = Math.max(hMax, c.h);
+                vMax = Math.max(vMax, c.v);
+            }
+            int mcuWidth = 8 * hMax;
+            int mcuHeight = 8 * vMax;
+            int mcusX = (width + mcuWidth - 1) / mcuWidth;
+            int mcusY = (height + mcuHeight - 1) / mcuHeight;
+
+            // The output covers the region at the reduced scale; only the MCUs under it are transformed.
+            int outX0 = region.x / scale;
+            int outY0 = region.y / scale;
+            int outWidth = (region.x + region.width + scale - 1) / scale - outX0;
+            int outHeight = (region.y + region.height + scale - 1) / scale - outY0;
+            int firstMcuX = region.x / mcuWidth;
+            int lastMcuX = (region.x + region.width - 1) / mcuWidth;
+            int firstMcuY = region.y / mcuHeight;
+            int lastMcuY = (region.y + region.height - 1) / mcuHeight;
+            int planeX0 = firstMcuX * hMax * n; // Output x (in image coordinates) where the planes start.
+            for (Component c : components) {
+                c.planeWidth = (lastMcuX - firstMcuX + 1) * c.h * n;
+                c.plane = new byte[c.planeWidth * c.v * n];
+                c.columns = new int[outWidth];
+                for (int x = 0; x < outWidth; x++) {
+                    c.columns[x] = (outX0 + x - planeX0) * c.h / hMax; // Nearest-neighbour chroma upsampling.
+                }
+            }
+
+            boolean gray = components.length == 1;
+            int type = gray ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB;
+            BufferedImage image = destination.allocate(type, outWidth, outHeight);
+            if (image == null) {
+                image = new BufferedImage(outWidth, outHeight, type);
+            }
+            boolean rgb = !gray && (adobeTransform == 0
+                    || components[0].id == 'R' && components[1].id == 'G' && components[2].id == 'B');
+
+            BitReader reader = new BitReader(data, end);
+            int[] block = new int[64];
+            int mcusToRestart = restartInterval;
+            for (int mcuY = 0; mcuY <= lastMcuY; mcuY++) {
+                boolean rowNeeded = mcuY >= firstMcuY;
+                for (int mcuX = 0; mcuX < mcusX; mcuX++) {
+                    if (restartInterval > 0) {
+                        if (mcusToRestart == 0) {
+                            reader.restart();
+                            for (Component c : components) {
+                                c.prediction = 0;
+                            }
+                            mcusToRestart = restartInterval;
+                        }
+                        mcusToRestart--;
+                    }
+                    boolean needed = rowNeeded && mcuX >= firstMcuX && mcuX <= lastMcuX;
+                    for (Component c : components) {
+                        for (int by = 0; by < c.v; by++) {
+                            for (int bx = 0; bx < c.h; bx++) {
+                                decodeBlock(reader, c, block, needed ? n : 0);
+                                if (needed) {
+                                    int x = ((mcuX - firstMcuX) * c.h + bx) * n;
+                                    int y = by * n;
+                                    inverseTransform(block, n, c.plane, y * c.planeWidth + x, c.planeWidth);
+                                }
+                            }
+                        }
+                    }
+                }
+                if (reader.overrun()) {
+                    // ImageIO decodes what is there and fills in the rest.
+                    throw new UnsupportedImageException(name + " is truncated");
+                }
+                if (rowNeeded) {
+                    writeRow(image, mcuY, n, vMax, outY0, outWidth, outHeight, rgb);
+                }
+            }
+            return new DecodedImage(image, outWidth, outHeight, width, height, NAME);
+        }
+
+        /**
+         * Decodes one block, keeping the dequantized coefficients of its top-left keep x keep corner in block.
+         */
+        private void decodeBlock(BitReader reader, Component c, int[] block, int keep) throws UnsupportedImageException {
+            int[] q = quant[c.quantTable];
+            c.prediction += reader.receiveExtend(reader.decode(c.dc));
+            if (keep > 0) {
+                for (int row = 0; row < keep; row++) {
+                    for (int col = 0; col < keep; col++) {
+                        block[row * 8 + col] = 0;
+                    }
+                }
+                block[0] = c.prediction * q[0];
+            }
+            for (int k = 1; k < 64; k++) {
+                int rs = reader.decode(c.ac);
+                int run = rs >> 4;
+                int size = rs & 0x0F;
+                if (size == 0) {
+                    if (run != 15) {
+                        break; // End of block.
+                    }
+                    k += 15;
+                    continue;
+                }
+                k += run;
+                if (k > 63) {
+                    throw new UnsupportedImageException("Corrupt block");
+                }
+                int value = reader.receiveExtend(size);
+                int natural = ZIGZAG[k];
+                if ((natural >> 3) < keep && (natural & 7) < keep) {
+                    block[natural] = value * q[k];
+                }
+            }
+        }
+
+        /**
+         * Writes an n x n reduced inverse DCT of a block's low-frequency coefficients into a plane.
+         * The reduced transforms use the n-point basis C(u)/2 * cos((2x+1)u*pi / 2n), so the DC term still gives the block mean.
+         */
+        private void inverseTransform(int[] block, int n, byte[] plane, int offset, int stride) {
+            if (n == 1) {
+                plane[offset] = clamp((block[0] + 4 >> 3) + 128);
+                return;
+            }
+            if (n == 2) {
+                // The 2-point basis is +-1/(2*sqrt(2)) everywhere, so each pixel is a signed sum of the four coefficients / 8.
+                int a = block[0] + block[1];
+                int b = block[0] - block[1];
+                int c = block[8] + block[9];
+                int d = block[8] - block[9];
+                plane[offset] = clamp((a + c + 4 >> 3) + 128);
+                plane[offset + 1] = clamp((b + d + 4 >> 3) + 128);
+                plane[offset + stride] = clamp((a - c + 4 >> 3) + 128);
+                plane[offset + stride + 1] = clamp((b - d + 4 >> 3) + 128);
+                return;
+            }
+            // 4-point IDCT as an even/odd butterfly, first along rows, then along columns.
+            for (int v = 0; v < 4; v++) {
+                int at = v * 8;
+                float even0 = C0 * (block[at] + block[at + 2]);
+                float even1 = C0 * (block[at] - block[at + 2]);
+                float odd0 = C1 * block[at + 1] + C3 * block[at + 3];
+                float odd1 = C3 * block[at + 1] - C1 * block[at + 3];
+                rows[v * 4] = even0 + odd0;
+                rows[v * 4 + 1] = even1 + odd1;
+                rows[v * 4 + 2] = even1 - odd1;
+                rows[v * 4 + 3] = even0 - odd0;
+            }
+            for (int x = 0; x < 4; x++) {
+                float even0 = C0 * (rows[x] + rows[8 + x]) + 128.5f;
+                float even1 = C0 * (rows[x] - rows[8 + x]) + 128.5f;
+                float odd0 = C1 * rows[4 + x] + C3 * rows[12 + x];
+                float odd1 = C3 * rows[4 + x] - C1 * rows[12 + x];
+                plane[offset + x] = clamp((int) Math.floor(even0 + odd0));
+                plane[offset + stride + x] = clamp((int) Math.floor(even1 + odd1));
+                plane[offset + 2 * stride + x] = clamp((int) Math.floor(even1 - odd1));
+                plane[offset + 3 * stride + x] = clamp((int) Math.floor(even0 - odd0));
+            }
+        }
+
+        /**
+         * Converts the output rows covered by one MCU row from the component planes into the image.
+         */
+        private void writeRow(BufferedImage image, int mcuY, int n, int vMax, int outY0, int outWidth, int outHeight, boolean rgb) {
+            int rowsPerMcu = vMax * n;
+            int yStart = Math.max(outY0, mcuY * rowsPerMcu);
+            int yEnd = Math.min(outY0 + outHeight, (mcuY + 1) * rowsPerMcu);
+            if (components.length == 1) {
+                Component c = components[0];
+                byte[] target = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+                int stride = ((ComponentSampleModel) image.getSampleModel()).getScanlineStride();
+                for (int y = yStart; y < yEnd; y++) {
+                    int from = (y - mcuY * rowsPerMcu) * c.planeWidth + c.columns[0];
+                    System.arraycopy(c.plane, from, target, (y - outY0) * stride, outWidth);
+                }
+                return;
+            }
+            int[] target = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            int stride = ((SinglePixelPackedSampleModel) image.getSampleModel()).getScanlineStride();
+            Component c0 = components[0];
+            Component c1 = components[1];
+            Component c2 = components[2];
+            for (int y = yStart; y < yEnd; y++) {
+                int localY = y - mcuY * rowsPerMcu;
+                int row0 = localY * c0.v / vMax * c0.planeWidth;
+                int row1 = localY * c1.v / vMax * c1.planeWidth;
+                int row2 = localY * c2.v / vMax * c2.planeWidth;
+                int out = (y - outY0) * stride;
+                for (int x = 0; x < outWidth; x++) {
+                    int a = c0.plane[row0 + c0.columns[x]] & 0xFF;
+                    int b = c1.plane[row1 + c1.columns[x]] & 0xFF;
+                    int d = c2.plane[row2 + c2.columns[x]] & 0xFF;
+                    if (rgb) {
+                        target[out++] = a << 16 | b << 8 | d;
+                    } else {
+                        int r = clamp255(a + (CR_R[d] + 32768 >> 16));
+                        int g = clamp255(a + (CB_G[b] + CR_G[d] >> 16));
+                        int bl = clamp255(a + (CB_B[b] + 32768 >> 16));
+                        target[out++] = r << 16 | g << 8 | bl;
+                    }
+                }
+            }
+        }
+
+        private static byte clamp(int value) {
+            return (byte) clamp255(value);
+        }
+
+        private static int clamp255(int value) {
+            return value < 0 ? 0 : Math.min(value, 255);
+        }
+    }
+}
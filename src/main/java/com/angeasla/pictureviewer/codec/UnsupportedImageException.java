@@ -0,0 +1,14 @@
+package com.angeasla.pictureviewer.codec;
+
+import java.io.IOException;
+
+/**
+ * Thrown by a decoder that cannot handle a particular image, so that the registry tries the next decoder.
+ */
+public class UnsupportedImageException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public UnsupportedImageException(String message) {
+        super(message);
+    }
+}
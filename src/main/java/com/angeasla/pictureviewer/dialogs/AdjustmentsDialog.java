@@ -0,0 +1,320 @@
+package com.angeasla.pictureviewer.dialogs;
+
+import com.angeasla.pictureviewer.model.AdjustmentRenderer;
+import com.angeasla.pictureviewer.model.Adjustments;
+import com.angeasla.pictureviewer.model.ArchiveFileSystems;
+import com.angeasla.pictureviewer.ui.ImageDisplayPane;
+import com.angeasla.pictureviewer.util.MemoryGovernor;
+import com.angeasla.pictureviewer.util.PixelBufferPool;
+import com.angeasla.pictureviewer.util.PooledImageDecoder;
+import com.angeasla.pictureviewer.util.PooledImageDecoder.DecodedFrame;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.Slider;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A dialog for non-destructive edits of the displayed image: rotation, crop, levels, gamma, brightness and contrast.
+ * <p>
+ * While the dialog is open, the image in the main window shows a live preview. The preview is rendered from a copy
+ * of the image at the viewport's resolution, at most once per frame however fast the sliders move.
+ * "Save" stores the edits in the image's sidecar file; "Save copy..." renders the edited image at full resolution
+ * into a new file as a cancellable background task. The original image file is never modified.
+ */
+public class AdjustmentsDialog {
+
+    private final Stage stage = new Stage();
+    private final Path image;
+    private final ImageDisplayPane imageDisplayPane;
+    private final PooledImageDecoder decoder = new PooledImageDecoder(PixelBufferPool.shared(), MemoryGovernor.shared());
+
+    private final Slider cropLeft = slider(0, 45, 0);
+    private final Slider cropTop = slider(0, 45, 0);
+    private final Slider cropRight = slider(0, 45, 0);
+    private final Slider cropBottom = slider(0, 45, 0);
+    private final Slider brightness = slider(-50, 50, 0);
+    private final Slider contrast = slider(-100, 100, 0);
+    private final Slider blackPoint = slider(0, 254, 0);
+    private final Slider whitePoint = slider(1, 255, 255);
+    private final Slider gamma = slider(0.2, 3, 1);
+    private final HBox rotateButtons = new HBox(5);
+    private final GridPane controls = new GridPane();
+    private final Button saveCopyButton = new Button("Save copy...");
+    private final ProgressBar exportProgress = new ProgressBar(0);
+
+    private int quarterTurns;
+    private DecodedFrame previewSource; // The unedited image at viewport resolution, once decoded.
+    private boolean previewDirty;
+    private Task<Boolean> exportTask;
+
+    // Renders the preview at most once per frame, however many slider events arrived since the last one.
+    private final AnimationTimer previewTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            if (previewDirty && previewSource != null) {
+                previewDirty = false;
+                imageDisplayPane.previewFrame(AdjustmentRenderer.render(previewSource, currentAdjustments(), PixelBufferPool.shared()));
+            }
+        }
+    };
+
+    /**
+     * Displays the adjustments dialog for an image that is shown in the image display pane.
+     * The image's stored adjustments are loaded into the controls, and its unedited pixels are decoded
+     * in the background at the given viewport size for previewing.
+     *
+     * @param ownerStage       The primary stage, used as the owner for the modal dialog.
+     * @param image            The image file being edited.
+     * @param imageDisplayPane The pane showing the image, which shows the preview while the dialog is open.
+     * @param viewportWidth    The width of the viewport in physical pixels.
+     * @param viewportHeight   The height of the viewport in physical pixels.
+     * @param loader           The ExecutorService to decode the preview source on.
+     * @param onClosed         Called when the dialog closes, e.g. to display the image again with its saved edits.
+     */
+    public static void show(Stage ownerStage, Path image, ImageDisplayPane imageDisplayPane,
+                            int viewportWidth, int viewportHeight, ExecutorService loader, Runnable onClosed) {
+        new AdjustmentsDialog(ownerStage, image, imageDisplayPane, onClosed).start(viewportWidth, viewportHeight, loader);
+    }
+
+    private AdjustmentsDialog(Stage ownerStage, Path image, ImageDisplayPane imageDisplayPane, Runnable onClosed) {
+        this.image = image;
+        this.imageDisplayPane = imageDisplayPane;
+
+        stage.initOwner(ownerStage); // Set the owner stage (main application window).
+        stage.initModality(Modality.APPLICATION_MODAL); // Make dialog modal.
+        stage.setTitle("Adjust " + image.getFileName()); // Dialog window title.
+        stage.setResizable(false); // Prevent resizing of the dialog.
+
+        Button rotateLeft = new Button("⟲ Rotate");
+        Button rotateRight = new Button("Rotate ⟳");
+        rotateLeft.setOnAction(e -> rotate(-1));
+        rotateRight.setOnAction(e -> rotate(1));
+        rotateButtons.getChildren().addAll(rotateLeft, rotateRight);
+
+        controls.setHgap(10);
+        controls.setVgap(6);
+        addRow(controls, "Crop left %", cropLeft);
+        addRow(controls, "Crop top %", cropTop);
+        addRow(controls, "Crop right %", cropRight);
+        addRow(controls, "Crop bottom %", cropBottom);
+        addRow(controls, "Brightness", brightness);
+        addRow(controls, "Contrast", contrast);
+        addRow(controls, "Black level", blackPoint);
+        addRow(controls, "White level", whitePoint);
+        addRow(controls, "Gamma", gamma);
+
+        Button resetButton = new Button("Reset");
+        Button saveButton = new Button("Save");
+        Button cancelButton = new Button("Cancel");
+        resetButton.setOnAction(e -> setControls(Adjustments.NONE));
+        saveButton.setOnAction(e -> save());
+        saveCopyButton.setOnAction(e -> {
+            if (exportTask != null) {
+                exportTask.cancel(); // The button reads "Cancel export" while a copy is being rendered.
+            } else {
+                saveCopy();
+            }
+        });
+        cancelButton.setOnAction(e -> stage.close());
+        HBox buttons = new HBox(5, resetButton, saveCopyButton, saveButton, cancelButton);
+        buttons.setAlignment(Pos.CENTER_RIGHT);
+
+        exportProgress.setMaxWidth(Double.MAX_VALUE);
+        exportProgress.setVisible(false);
+
+        VBox content = new VBox(10, rotateButtons, controls, exportProgress, buttons);
+        content.setId("adjustContent"); // ID for styling.
+        content.setPadding(new Insets(15)); // Padding around dialog content.
+        setControls(Adjustments.load(image));
+        controls.setDisable(true); // Enabled once the preview source is decoded.
+        rotateButtons.setDisable(true);
+
+        // Any control change only marks the preview as stale; the timer renders it on the next frame.
+        for (Slider slider : List.of(cropLeft, cropTop, cropRight, cropBottom, brightness, contrast, blackPoint, whitePoint, gamma)) {
+            slider.valueProperty().addListener((obs, oldVal, newVal) -> previewDirty = true);
+        }
+        stage.setOnShown(e -> previewTimer.start());
+        stage.setOnHidden(e -> {
+            previewTimer.stop();
+            if (exportTask != null) {
+                exportTask.cancel();
+            }
+            if (previewSource != null) {
+                PixelBufferPool.shared().release(previewSource.pixels());
+                previewSource = null;
+            }
+            onClosed.run();
+        });
+
+        Scene scene = new Scene(content);
+        scene.getStylesheets().add(Objects.requireNonNull(AdjustmentsDialog.class.getResource("/style.css")).toExternalForm());
+        stage.setScene(scene);
+    }
+
+    /**
+     * Shows the dialog and decodes the preview source in the background.
+     */
+    private void start(int viewportWidth, int viewportHeight, ExecutorService loader) {
+        stage.show();
+        loader.submit(() -> {
+            try {
+                DecodedFrame decoded = decoder.decode(image, viewportWidth, viewportHeight);
+                DecodedFrame reduced = AdjustmentRenderer.reduce(decoded, viewportWidth, viewportHeight, PixelBufferPool.shared());
+                if (reduced != decoded) {
+                    PixelBufferPool.shared().release(decoded.pixels());
+                }
+                Platform.runLater(() -> {
+                    if (!stage.isShowing()) {
+                        PixelBufferPool.shared().release(reduced.pixels());
+                        return;
+                    }
+                    previewSource = reduced;
+                    previewDirty = true;
+                    controls.setDisable(false);
+                    rotateButtons.setDisable(false);
+                });
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error decoding image for adjustment: " + image + " - " + e.getMessage());
+                Platform.runLater(() -> {
+                    stage.close();
+                    showError("Could not edit image", e);
+                });
+            }
+        });
+    }
+
+    private Adjustments currentAdjustments() {
+        return new Adjustments(quarterTurns,
+                cropLeft.getValue() / 100, cropTop.getValue() / 100, cropRight.getValue() / 100, cropBottom.getValue() / 100,
+                brightness.getValue() / 100, contrast.getValue() / 100,
+                (int) blackPoint.getValue(), (int) whitePoint.getValue(), gamma.getValue());
+    }
+
+    private void setControls(Adjustments adjustments) {
+        quarterTurns = adjustments.quarterTurns();
+        cropLeft.setValue(adjustments.cropLeft() * 100);
+        cropTop.setValue(adjustments.cropTop() * 100);
+        cropRight.setValue(adjustments.cropRight() * 100);
+        cropBottom.setValue(adjustments.cropBottom() * 100);
+        brightness.setValue(adjustments.brightness() * 100);
+        contrast.setValue(adjustments.contrast() * 100);
+        blackPoint.setValue(adjustments.blackPoint());
+        whitePoint.setValue(adjustments.whitePoint());
+        gamma.setValue(adjustments.gamma());
+        previewDirty = true;
+    }
+
+    private void rotate(int turns) {
+        quarterTurns = Math.floorMod(quarterTurns + turns, 4);
+        previewDirty = true;
+    }
+
+    /**
+     * Stores the edits in the sidecar file and closes the dialog.
+     */
+    private void save() {
+        try {
+            currentAdjustments().save(image);
+            stage.close();
+        } catch (IOException e) {
+            System.err.println("Error saving adjustments: " + image + " - " + e.getMessage());
+            showError("Could not save the adjustments", e);
+        }
+    }
+
+    /**
+     * Asks for a file name and renders the edited image into it at full resolution in the background.
+     */
+    private void saveCopy() {
+        String name = image.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Save edited copy");
+        chooser.setInitialFileName((dot > 0 ? name.substring(0, dot) : name) + "-edited.jpg");
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("JPEG", "*.jpg"),
+                new FileChooser.ExtensionFilter("PNG", "*.png"));
+        // Images inside archives cannot be written next to; start in the directory holding the archive instead.
+        Path archive = ArchiveFileSystems.archiveOf(image);
+        Path directory = archive != null ? archive.getParent() : image.getParent();
+        if (directory != null) {
+            chooser.setInitialDirectory(directory.toFile());
+        }
+        File file = chooser.showSaveDialog(stage);
+        if (file == null) {
+            return;
+        }
+
+        Adjustments adjustments = currentAdjustments();
+        Path target = file.toPath();
+        exportTask = new Task<>() {
+            @Override
+            protected Boolean call() throws Exception {
+                return AdjustmentRenderer.export(image, adjustments, target, decoder, this::isCancelled,
+                        progress -> updateProgress(progress, 1));
+            }
+        };
+        exportProgress.progressProperty().bind(exportTask.progressProperty());
+        exportProgress.setVisible(true);
+        saveCopyButton.setText("Cancel export");
+        exportTask.setOnSucceeded(e -> finishExport());
+        exportTask.setOnCancelled(e -> finishExport());
+        exportTask.setOnFailed(e -> {
+            Throwable error = exportTask.getException();
+            System.err.println("Error saving edited copy: " + target + " - " + error.getMessage());
+            finishExport();
+            showError("Could not save the edited copy", error);
+        });
+
+        // Full-resolution renders take seconds, so they get their own thread instead of blocking image loading.
+        Thread thread = new Thread(exportTask, "adjustment-export");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void finishExport() {
+        exportTask = null;
+        exportProgress.progressProperty().unbind();
+        exportProgress.setVisible(false);
+        saveCopyButton.setText("Save copy...");
+    }
+
+    private void showError(String header, Throwable error) {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.initOwner(stage.isShowing() ? stage : stage.getOwner());
+        alert.setTitle("Error");
+        alert.setHeaderText(header);
+        alert.setContentText(image.getFileName() + "\n" + error.getMessage());
+        alert.show();
+    }
+
+    private static Slider slider(double min, double max, double value) {
+        Slider slider = new Slider(min, max, value);
+        slider.setPrefWidth(260);
+        return slider;
+    }
+
+    private static void addRow(GridPane grid, String label, Slider slider) {
+        grid.addRow(grid.getRowCount(), new Label(label), slider);
+    }
+}
@@ -1,21 +1,46 @@
 package com.angeasla.pictureviewer.handlers;
 
 import com.angeasla.pictureviewer.dialogs.AboutDialog;
+import com.angeasla.pictureviewer.dialogs.AdjustmentsDialog;
 import com.angeasla.pictureviewer.dialogs.EasterEggDialog;
+import com.angeasla.pictureviewer.model.AdjustmentRenderer;
+import com.angeasla.pictureviewer.model.Adjustments;
+import com.angeasla.pictureviewer.model.ArchiveFileSystems;
 import com.angeasla.pictureviewer.model.DirectoryNavigator;
+import com.angeasla.pictureviewer.model.SlideshowPipeline;
+import com.angeasla.pictureviewer.ui.CompareView;
+import com.angeasla.pictureviewer.ui.HistogramPanel;
 import com.angeasla.pictureviewer.ui.ImageDisplayPane;
+import com.angeasla.pictureviewer.ui.MainView;
+import com.angeasla.pictureviewer.ui.SlideshowView;
 import com.angeasla.pictureviewer.util.ImageUtils;
+import com.angeasla.pictureviewer.util.MemoryGovernor;
+import com.angeasla.pictureviewer.util.PixelBufferPool;
+import com.angeasla.pictureviewer.util.PooledImageDecoder;
+import javafx.application.Platform;
+import javafx.geometry.Bounds;
+import javafx.geometry.Rectangle2D;
 import javafx.beans.value.ChangeListener;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ListView;
+import javafx.scene.control.TextInputDialog;
 import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.stage.Screen;
 import javafx.stage.Stage;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The controller for the Picture Viewer application, handling user interactions
@@ -27,6 +52,22 @@ public class AppController {
     private final ImageDisplayPane imageDisplayPane;
     private final Stage primaryStage; // Reference to the main stage for dialogs/fullscreen
     private final Button upButton; // Reference to the up button for firing events
+    private final ListView<Path> listView; // Reference to the file list, for the slideshow start position
+    private final ExecutorService loader; // Background threads for image decoding
+
+    // Decodes displayed images into pooled off-heap buffers.
+    private final PooledImageDecoder decoder = new PooledImageDecoder(PixelBufferPool.shared(), MemoryGovernor.shared());
+    // Incremented for every image request, so that only the most recent decode is displayed.
+    private final AtomicLong displayGeneration = new AtomicLong();
+
+    // Images are decoded at up to this multiple of the screen resolution, leaving headroom for zooming in.
+    private static final int DISPLAY_ZOOM_HEADROOM = 2;
+
+    // Default time each slide stays on screen, offered in the slideshow interval prompt.
+    private static final double DEFAULT_SLIDESHOW_INTERVAL_SECONDS = 3.0;
+
+    // The image file most recently requested for display, for editing.
+    private Path displayedPath;
 
     // For Easter Egg
     private static final String EASTER_EGG_CODE = "LALUNA";
@@ -39,29 +80,71 @@ public class AppController {
      * @param imageDisplayPane   The ImageDisplayPane instance to display images.
      * @param primaryStage     The main application stage.
      * @param upButton         The "Up" button, needed to programmatically fire its action.
+     * @param listView         The ListView displaying files and directories.
+     * @param loader           The ExecutorService to use for background image decoding.
      */
-    public AppController(DirectoryNavigator directoryNavigator, ImageDisplayPane imageDisplayPane, Stage primaryStage, Button upButton) {
+    public AppController(DirectoryNavigator directoryNavigator, ImageDisplayPane imageDisplayPane, Stage primaryStage,
+                         Button upButton, ListView<Path> listView, ExecutorService loader) {
         this.directoryNavigator = directoryNavigator;
         this.imageDisplayPane = imageDisplayPane;
         this.primaryStage = primaryStage;
         this.upButton = upButton; // Store reference to the up button
+        this.listView = listView;
+        this.loader = loader;
     }
 
     /**
      * Returns an EventHandler for the "Up" button.
      * Navigates up one directory or shows all roots if at a root.
+     * Inside an archive, going up eventually leaves the archive for the directory containing it.
      * @return An EventHandler for ActionEvents.
      */
     public EventHandler<ActionEvent> getUpButtonAction() {
         return e -> {
-            if (directoryNavigator.getCurrentDir() != null && directoryNavigator.getCurrentDir().getParent() != null) {
-                directoryNavigator.openDir(directoryNavigator.getCurrentDir().getParent());
-            } else if (directoryNavigator.getCurrentDir() != null) {
+            Path current = directoryNavigator.getCurrentDir();
+            Path parent = current == null ? null : ArchiveFileSystems.parentOf(current);
+            if (parent != null) {
+                directoryNavigator.openDir(parent);
+            } else if (current != null) {
                 directoryNavigator.showAllRoots();
             }
         };
     }
 
+    /**
+     * Returns an EventHandler for the "Back" button.
+     * Returns to the previous location with its selection and scroll position.
+     * @return An EventHandler for ActionEvents.
+     */
+    public EventHandler<ActionEvent> getBackButtonAction() {
+        return e -> directoryNavigator.goBack();
+    }
+
+    /**
+     * Returns an EventHandler for the "Forward" button.
+     * Returns to the location left by going back, with its selection and scroll position.
+     * @return An EventHandler for ActionEvents.
+     */
+    public EventHandler<ActionEvent> getForwardButtonAction() {
+        return e -> directoryNavigator.goForward();
+    }
+
+    /**
+     * Returns an EventHandler for the mouse's back and forward side buttons on the scene.
+     * @return An EventHandler for MouseEvents.
+     */
+    public EventHandler<MouseEvent> getSceneMouseHandler() {
+        return event -> {
+            if (event.getButton() == MouseButton.BACK) {
+                directoryNavigator.goBack();
+                event.consume();
+            } else if (event.getButton() == MouseButton.FORWARD) {
+                directoryNavigator.goForward();
+                event.consume();
+            }
+        };
+    }
+
     /**
      * Returns an EventHandler for the "About" button.
      * Displays the About dialog.
@@ -86,6 +169,132 @@ public class AppController {
         };
     }
 
+    /**
+     * Returns an EventHandler for the "Histogram" button.
+     * Shows or hides the histogram and statistics panel.
+     * @param histogramPanel The panel to toggle.
+     * @return An EventHandler for ActionEvents.
+     */
+    public EventHandler<ActionEvent> getHistogramButtonAction(HistogramPanel histogramPanel) {
+        return e -> histogramPanel.toggle();
+    }
+
+    /**
+     * Returns an EventHandler for the "Compare" button.
+     * Shows the selected images side by side, or the selected image and the images following it when only one
+     * is selected, as when culling a burst. Pressing the button again returns to the single image display.
+     * @param compareView The compare view to show the images in.
+     * @param mainView    The main layout, whose center shows either the single image display or the compare view.
+     * @param compareBtn  The compare button, whose text follows the mode.
+     * @return An EventHandler for ActionEvents.
+     */
+    public EventHandler<ActionEvent> getCompareButtonAction(CompareView compareView, MainView mainView, Button compareBtn) {
+        return e -> {
+            if (mainView.isCompareViewShown()) {
+                compareView.close();
+                mainView.showImageView();
+                compareBtn.setText("Compare");
+                return;
+            }
+            List<Path> images = compareSelection();
+            if (images.size() < 2) {
+                Alert alert = new Alert(Alert.AlertType.INFORMATION);
+                alert.setTitle("Compare");
+                alert.setHeaderText("Not enough images to compare");
+                alert.setContentText("Select two to " + CompareView.MAX_IMAGES + " images with Ctrl+click or Shift+click, "
+                        + "or select an image that is followed by other images in the folder.");
+                alert.showAndWait();
+                return;
+            }
+            compareView.show(images);
+            mainView.showCompareView(compareView.getPane());
+            compareBtn.setText("Single view");
+        };
+    }
+
+    /**
+     * Returns the images to compare: the selected images if there are several, otherwise the selected image
+     * followed by the next images in the list.
+     */
+    private List<Path> compareSelection() {
+        List<Path> selected = listView.getSelectionModel().getSelectedItems().stream()
+                .filter(ImageUtils::isImage)
+                .limit(CompareView.MAX_IMAGES)
+                .toList();
+        if (selected.size() >= 2) {
+            return selected;
+        }
+        List<Path> images = directoryNavigator.getImageFiles();
+        int start = selected.isEmpty() ? -1 : images.indexOf(selected.get(0));
+        if (start < 0) {
+            return selected;
+        }
+        return images.subList(start, Math.min(images.size(), start + CompareView.MAX_IMAGES));
+    }
+
+    /**
+     * Returns an EventHandler for the "Slideshow" button.
+     * Asks for the slide interval and plays a full screen slideshow over the images in the current directory,
+     * starting from the selected image.
+     * @return An EventHandler for ActionEvents.
+     */
+    public EventHandler<ActionEvent> getSlideshowButtonAction() {
+        return e -> {
+            List<Path> slides = directoryNavigator.getImageFiles();
+            if (slides.isEmpty()) {
+                Alert alert = new Alert(Alert.AlertType.INFORMATION);
+                alert.setTitle("Slideshow");
+                alert.setHeaderText("No images to show");
+                alert.setContentText("Open a directory that contains images to start a slideshow.");
+                alert.showAndWait();
+                return;
+            }
+
+            TextInputDialog dialog = new TextInputDialog(String.valueOf(DEFAULT_SLIDESHOW_INTERVAL_SECONDS));
+            dialog.initOwner(primaryStage);
+            dialog.setTitle("Slideshow");
+            dialog.setHeaderText("Seconds per slide");
+            dialog.showAndWait().ifPresent(input -> {
+                double seconds;
+                try {
+                    seconds = Double.parseDouble(input.trim());
+                } catch (NumberFormatException ex) {
+                    seconds = DEFAULT_SLIDESHOW_INTERVAL_SECONDS;
+                }
+                if (seconds <= 0) {
+                    seconds = DEFAULT_SLIDESHOW_INTERVAL_SECONDS;
+                }
+                // Start from the selected image if there is one, otherwise from the first image.
+                int startIndex = Math.max(0, slides.indexOf(listView.getSelectionModel().getSelectedItem()));
+                new SlideshowView(primaryStage, slides, startIndex, Math.round(seconds * 1000),
+                        SlideshowPipeline.SlowFramePolicy.SKIP).show();
+            });
+        };
+    }
+
+    /**
+     * Returns an EventHandler for the "Adjust" button.
+     * Opens the adjustments dialog for the displayed image, previewing edits in place.
+     * When the dialog closes, the image is displayed again with whatever edits were saved.
+     * @return An EventHandler for ActionEvents.
+     */
+    public EventHandler<ActionEvent> getAdjustButtonAction() {
+        return e -> {
+            Path path = displayedPath;
+            if (path == null || isAnimated(path)) {
+                Alert alert = new Alert(Alert.AlertType.INFORMATION);
+                alert.setTitle("Adjust");
+                alert.setHeaderText("No image to adjust");
+                alert.setContentText("Select a still image (not a GIF or WebP animation) to adjust it.");
+                alert.showAndWait();
+                return;
+            }
+            int[] viewport = viewportPixels(stageScreen());
+            displayGeneration.incrementAndGet(); // Drop decodes still in flight, so they do not replace the preview.
+            AdjustmentsDialog.show(primaryStage, path, imageDisplayPane, viewport[0], viewport[1], loader, () -> showImage(path));
+        };
+    }
+
     /**
      * Returns a ChangeListener for the ListView's selected item property.
      * Displays the selected image if it's a valid image file.
@@ -93,15 +302,15 @@ public class AppController {
      */
     public ChangeListener<Path> getListViewSelectionListener() {
         return (obs, old, path) -> {
-            if (path != null && Files.isRegularFile(path) && ImageUtils.isImage(path.toFile())) {
-                imageDisplayPane.displayImage(new Image(path.toUri().toString(), true));
+            if (path != null && Files.isRegularFile(path) && ImageUtils.isImage(path)) {
+                showImage(path);
             }
         };
     }
 
     /**
      * Returns an EventHandler for the ListView's mouse click event.
-     * Opens a directory on double-click.
+     * Opens a directory or archive on double-click.
      * @return An EventHandler for MouseEvents.
      */
     public EventHandler<javafx.scene.input.MouseEvent> getListViewMouseClickHandler() {
@@ -109,14 +318,14 @@ public class AppController {
             if (e.getClickCount() == 2) {
                 ListView<Path> listView = (ListView<Path>) e.getSource();
                 Path p = listView.getSelectionModel().getSelectedItem();
-                if (p != null && Files.isDirectory(p)) directoryNavigator.openDir(p);
+                if (p != null && (Files.isDirectory(p) || ImageUtils.isArchive(p))) directoryNavigator.openDir(p);
             }
         };
     }
 
     /**
      * Returns an EventHandler for the ListView's keyboard key press event.
-     * Handles ENTER key for opening files/directories.
+     * Handles ENTER key for opening files/directories/archives.
      * @return An EventHandler for KeyEvents.
      */
     public EventHandler<KeyEvent> getListViewKeyHandler() {
@@ -126,17 +335,190 @@ public class AppController {
             if (p == null) return;
             switch (e.getCode()) {
                 case ENTER -> {
-                    if (Files.isDirectory(p)) directoryNavigator.openDir(p);
-                    else if (ImageUtils.isImage(p.toFile()))
-                        imageDisplayPane.displayImage(new Image(p.toUri().toString(), true));
+                    if (Files.isDirectory(p) || ImageUtils.isArchive(p)) directoryNavigator.openDir(p);
+                    else if (ImageUtils.isImage(p))
+                        showImage(p);
                 }
             }
         };
     }
 
+    /**
+     * Decodes an image in the background and displays it once ready.
+     * Images are decoded into pooled off-heap buffers at screen resolution (with zoom headroom),
+     * so browsing does not allocate a large heap array per image. Only the most recently requested image
+     * is shown; decodes that finish after a newer request are discarded.
+     * Under memory pressure the zoom headroom is dropped, and at critical pressure images are decoded only
+     * at the resolution of the visible viewport. Loads that still would not fit show a notice instead.
+     * Edits stored in the image's sidecar file (see {@link Adjustments}) are applied to the decoded frame.
+     * GIF and WebP files are played by a streaming animation player; files that neither path can read
+     * fall back to JavaFX's own loader.
+     *
+     * @param path The image file to display.
+     */
+    private void showImage(Path path) {
+        long generation = displayGeneration.incrementAndGet();
+        displayedPath = path;
+        if (isAnimated(path)) {
+            imageDisplayPane.playAnimation(path, () -> {
+                if (generation == displayGeneration.get()) {
+                    imageDisplayPane.displayImage(new Image(path.toUri().toString(), true));
+                }
+            });
+            return;
+        }
+
+        Screen screen = stageScreen();
+        Rectangle2D bounds = screen.getBounds();
+        double scaleX = screen.getOutputScaleX();
+        double scaleY = screen.getOutputScaleY();
+        int[] viewport = viewportPixels(screen);
+        int viewportWidth = viewport[0];
+        int viewportHeight = viewport[1];
+
+        loader.submit(() -> {
+            if (generation != displayGeneration.get()) {
+                return; // A newer image was requested while this one was queued.
+            }
+            // Pick the decode size from the memory pressure level at the time the decode actually starts.
+            MemoryGovernor governor = MemoryGovernor.shared();
+            int width = viewportWidth;
+            int height = viewportHeight;
+            switch (governor.getLevel()) {
+                case NORMAL -> {
+                    width = (int) (bounds.getWidth() * scaleX) * DISPLAY_ZOOM_HEADROOM;
+                    height = (int) (bounds.getHeight() * scaleY) * DISPLAY_ZOOM_HEADROOM;
+                }
+                case PRESSURE -> {
+                    width = (int) (bounds.getWidth() * scaleX);
+                    height = (int) (bounds.getHeight() * scaleY);
+                    governor.recordDegradedLoad();
+                }
+                case CRITICAL -> governor.recordDegradedLoad();
+            }
+            try {
+                PooledImageDecoder.DecodedFrame frame;
+                try {
+                    frame = decoder.decode(path, width, height);
+                } catch (MemoryGovernor.LoadRefusedException e) {
+                    if (width <= viewportWidth && height <= viewportHeight) {
+                        throw e;
+                    }
+                    // Too large at the requested resolution: fall back to what the viewport can show.
+                    governor.recordDegradedLoad();
+                    frame = decoder.decode(path, viewportWidth, viewportHeight);
+                }
+                // Apply the image's stored edits, if any, at the decoded resolution.
+                Adjustments adjustments = Adjustments.load(path);
+                if (!adjustments.isNone()) {
+                    PooledImageDecoder.DecodedFrame edited = AdjustmentRenderer.render(frame, adjustments, PixelBufferPool.shared());
+                    PixelBufferPool.shared().release(frame.pixels());
+                    frame = edited;
+                }
+                PooledImageDecoder.DecodedFrame decoded = frame;
+                Platform.runLater(() -> {
+                    if (generation == displayGeneration.get()) {
+                        imageDisplayPane.displayFrame(decoded);
+                    } else {
+                        PixelBufferPool.shared().release(decoded.pixels());
+                    }
+                });
+            } catch (MemoryGovernor.LoadRefusedException e) {
+                Platform.runLater(() -> {
+                    if (generation == displayGeneration.get()) {
+                        Alert alert = new Alert(Alert.AlertType.WARNING);
+                        alert.initOwner(primaryStage);
+                        alert.setTitle("Not enough memory");
+                        alert.setHeaderText("Could not display " + path.getFileName());
+                        alert.setContentText(e.getMessage() + ".\nClose other images or start the viewer with a larger -Xmx.");
+                        alert.show();
+                    }
+                });
+            } catch (Exception e) {
+                System.err.println("Pooled decode failed for " + path + ", using JavaFX loader - " + e.getMessage());
+                showWithJavaFxLoader(path, generation);
+            }
+        });
+    }
+
+    /**
+     * Displays an image the pooled decoder could not read, loaded by JavaFX instead. Runs on the loader thread.
+     * Stored edits are applied to the loaded pixels; an image without edits is loaded in the background as before,
+     * and so is one whose edits cannot be applied.
+     */
+    private void showWithJavaFxLoader(Path path, long generation) {
+        Adjustments adjustments = Adjustments.load(path);
+        Image image = new Image(path.toUri().toString(), adjustments.isNone());
+        if (!adjustments.isNone() && !image.isError()) {
+            try {
+                showEdited(image, adjustments, generation);
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("Error applying edits: " + path + " - " + e.getMessage());
+            }
+        }
+        Platform.runLater(() -> {
+            if (generation == displayGeneration.get()) {
+                imageDisplayPane.displayImage(image);
+            }
+        });
+    }
+
+    /**
+     * Renders an image's stored edits onto pixels loaded by JavaFX and displays the result.
+     */
+    private void showEdited(Image image, Adjustments adjustments, long generation) {
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        ByteBuffer pixels = PixelBufferPool.shared().acquire(width * height * 4);
+        PooledImageDecoder.DecodedFrame edited;
+        try {
+            image.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getByteBgraPreInstance(), pixels, width * 4);
+            edited = AdjustmentRenderer.render(new PooledImageDecoder.DecodedFrame(width, height, pixels),
+                    adjustments, PixelBufferPool.shared());
+        } finally {
+            PixelBufferPool.shared().release(pixels);
+        }
+        Platform.runLater(() -> {
+            if (generation == displayGeneration.get()) {
+                imageDisplayPane.displayFrame(edited);
+            } else {
+                PixelBufferPool.shared().release(edited.pixels());
+            }
+        });
+    }
+
+    /**
+     * Returns whether an image is played as an animation rather than decoded as a still image.
+     */
+    private static boolean isAnimated(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        return name.endsWith(".gif") || name.endsWith(".webp");
+    }
+
+    /**
+     * Returns the screen the main window is on.
+     */
+    private Screen stageScreen() {
+        return Screen.getScreensForRectangle(primaryStage.getX(), primaryStage.getY(),
+                primaryStage.getWidth(), primaryStage.getHeight()).stream().findFirst().orElse(Screen.getPrimary());
+    }
+
+    /**
+     * Returns the size of the image viewport in physical pixels, or of the screen before the viewport is laid out.
+     */
+    private int[] viewportPixels(Screen screen) {
+        Rectangle2D bounds = screen.getBounds();
+        Bounds viewport = imageDisplayPane.getImageScrollPane().getViewportBounds();
+        return new int[] {
+                (int) (Math.max(1, viewport.getWidth() > 0 ? viewport.getWidth() : bounds.getWidth()) * screen.getOutputScaleX()),
+                (int) (Math.max(1, viewport.getHeight() > 0 ? viewport.getHeight() : bounds.getHeight()) * screen.getOutputScaleY())
+        };
+    }
+
     /**
      * Returns an EventHandler for global scene key press events.
-     * Handles Backspace for "Up" navigation and the Easter Egg code input.
+     * Handles Backspace for "Up" navigation, animation frame stepping, and the Easter Egg code input.
      * @return An EventHandler for KeyEvents.
      */
     public EventHandler<KeyEvent> getSceneKeyHandler() {
@@ -147,6 +529,24 @@ public class AppController {
                 event.consume(); // Consume the event to prevent default system behavior.
             }
 
+            // Alt+Left and Alt+Right move through the navigation history, as in file managers and browsers.
+            if (event.isAltDown() && event.getCode() == KeyCode.LEFT) {
+                directoryNavigator.goBack();
+                event.consume();
+            } else if (event.isAltDown() && event.getCode() == KeyCode.RIGHT) {
+                directoryNavigator.goForward();
+                event.consume();
+            }
+
+            // K pauses or resumes an animated image; comma and period step it back and forward by one frame.
+            if (event.getCode() == KeyCode.K && !event.isShortcutDown() && imageDisplayPane.toggleAnimationPaused()) {
+                event.consume();
+            } else if (event.getCode() == KeyCode.COMMA && imageDisplayPane.stepAnimation(-1)) {
+                event.consume();
+            } else if (event.getCode() == KeyCode.PERIOD && imageDisplayPane.stepAnimation(1)) {
+                event.consume();
+            }
+
             // Easter Egg key sequence handling.
             String character = event.getText();
             if (character != null && !character.isEmpty()) {
@@ -0,0 +1,316 @@
+package com.angeasla.pictureviewer.model;
+
+import com.angeasla.pictureviewer.util.MemoryGovernor;
+import com.angeasla.pictureviewer.util.PixelBufferPool;
+import com.angeasla.pictureviewer.util.PooledImageDecoder;
+import com.angeasla.pictureviewer.util.PooledImageDecoder.DecodedFrame;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Applies an {@link Adjustments} stack to decoded frames.
+ * <p>
+ * Crop and rotation are a pure remapping of pixel addresses, and all tone edits are folded into one lookup table,
+ * so each output pixel is produced in a single pass. The output is split into bands of rows that are rendered
+ * in parallel. Previews are rendered from a copy of the image reduced to the viewport's resolution,
+ * which keeps slider feedback at display frame rate even for very large photos; the full-resolution render
+ * only happens when an edited copy is saved.
+ */
+public class AdjustmentRenderer {
+
+    private static final int ROWS_PER_BAND = 32;
+    private static final float EXPORT_JPEG_QUALITY = 0.92f;
+
+    private AdjustmentRenderer() {
+    }
+
+    /**
+     * Renders a frame with adjustments applied into a new buffer from the pool. The source frame is left untouched.
+     *
+     * @param source      The frame to render, as premultiplied BGRA.
+     * @param adjustments The adjustments to apply.
+     * @param pool        The pool to take the output buffer from.
+     * @return The adjusted frame.
+     */
+    public static DecodedFrame render(DecodedFrame source, Adjustments adjustments, PixelBufferPool pool) {
+        return render(source, adjustments, pool, () -> false, progress -> { });
+    }
+
+    /**
+     * Renders a frame with adjustments applied into a new buffer from the pool, checking for cancellation between bands.
+     *
+     * @param source      The frame to render, as premultiplied BGRA.
+     * @param adjustments The adjustments to apply.
+     * @param pool        The pool to take the output buffer from.
+     * @param cancelled   Polled between bands; the render stops once it returns true.
+     * @param progress    Receives the completed fraction, from 0 to 1, from the rendering threads.
+     * @return The adjusted frame, or null if the render was cancelled.
+     */
+    public static DecodedFrame render(DecodedFrame source, Adjustments adjustments, PixelBufferPool pool,
+                                      BooleanSupplier cancelled, DoubleConsumer progress) {
+        int srcW = source.width();
+        int srcH = source.height();
+        int x0 = (int) Math.round(adjustments.cropLeft() * srcW);
+        int y0 = (int) Math.round(adjustments.cropTop() * srcH);
+        int cropW = Math.max(1, srcW - x0 - (int) Math.round(adjustments.cropRight() * srcW));
+        int cropH = Math.max(1, srcH - y0 - (int) Math.round(adjustments.cropBottom() * srcH));
+        int turns = adjustments.quarterTurns();
+        int outW = turns % 2 == 0 ? cropW : cropH;
+        int outH = turns % 2 == 0 ? cropH : cropW;
+
+        ByteBuffer in = source.pixels();
+        ByteBuffer out = pool.acquire(outW * outH * 4);
+        byte[] curve = adjustments.isToneNeutral() ? null : adjustments.toneCurve();
+        int stride = srcW * 4;
+        int bands = (outH + ROWS_PER_BAND - 1) / ROWS_PER_BAND;
+        AtomicInteger bandsDone = new AtomicInteger();
+
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            if (cancelled.getAsBoolean()) {
+                return;
+            }
+            byte[] row = new byte[outW * 4];
+            int endRow = Math.min(outH, (band + 1) * ROWS_PER_BAND);
+            for (int y = band * ROWS_PER_BAND; y < endRow; y++) {
+                // Address of the output row's first pixel in the source, and the step between its pixels.
+                int start;
+                int step;
+                switch (turns) {
+                    case 1 -> { // Clockwise: output rows run up the source columns from the bottom.
+                        start = (y0 + cropH - 1) * stride + (x0 + y) * 4;
+                        step = -stride;
+                    }
+                    case 2 -> {
+                        start = (y0 + cropH - 1 - y) * stride + (x0 + cropW - 1) * 4;
+                        step = -4;
+                    }
+                    case 3 -> { // Anticlockwise: output rows run down the source columns from the right.
+                        start = y0 * stride + (x0 + cropW - 1 - y) * 4;
+                        step = stride;
+                    }
+                    default -> {
+                        start = (y0 + y) * stride + x0 * 4;
+                        step = 4;
+                    }
+                }
+                if (step == 4) {
+                    in.get(start, row); // Unrotated rows are contiguous in the source.
+                } else {
+                    for (int x = 0, src = start, o = 0; x < outW; x++, src += step, o += 4) {
+                        row[o] = in.get(src);
+                        row[o + 1] = in.get(src + 1);
+                        row[o + 2] = in.get(src + 2);
+                        row[o + 3] = in.get(src + 3);
+                    }
+                }
+                if (curve != null) {
+                    applyCurve(row, curve);
+                }
+                out.put(y * outW * 4, row);
+            }
+            progress.accept((double) bandsDone.incrementAndGet() / bands);
+        });
+
+        if (cancelled.getAsBoolean()) {
+            pool.release(out);
+            return null;
+        }
+        return new DecodedFrame(outW, outH, out);
+    }
+
+    /**
+     * Reduces a frame to no more than the given size by averaging blocks of pixels, into a new buffer from the pool.
+     * This is the source previews are rendered from, so their cost follows the viewport rather than the photo.
+     * A frame that already fits is returned as is.
+     *
+     * @param frame     The frame to reduce, as premultiplied BGRA.
+     * @param maxWidth  The width the preview needs, in pixels.
+     * @param maxHeight The height the preview needs, in pixels.
+     * @param pool      The pool to take the buffer from.
+     * @return The reduced frame, or the given frame if it is small enough.
+     */
+    public static DecodedFrame reduce(DecodedFrame frame, int maxWidth, int maxHeight, PixelBufferPool pool) {
+        int srcW = frame.width();
+        int factor = (int) Math.ceil(Math.max((double) srcW / Math.max(1, maxWidth),
+                (double) frame.height() / Math.max(1, maxHeight)));
+        if (factor <= 1) {
+            return frame;
+        }
+        int outW = Math.max(1, srcW / factor);
+        int outH = Math.max(1, frame.height() / factor);
+        ByteBuffer out = pool.acquire(outW * outH * 4);
+        int samples = factor * factor;
+
+        IntStream.range(0, outH).parallel().forEach(y -> {
+            byte[] rows = new byte[srcW * 4];
+            int[] sums = new int[outW * 4];
+            for (int r = 0; r < factor; r++) {
+                frame.pixels().get((y * factor + r) * srcW * 4, rows);
+                for (int x = 0; x < outW * factor; x++) {
+                    int s = (x / factor) * 4;
+                    int i = x * 4;
+                    sums[s] += rows[i] & 0xFF;
+                    sums[s + 1] += rows[i + 1] & 0xFF;
+                    sums[s + 2] += rows[i + 2] & 0xFF;
+                    sums[s + 3] += rows[i + 3] & 0xFF;
+                }
+            }
+            byte[] row = new byte[outW * 4];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = (byte) (sums[i] / samples);
+            }
+            out.put(y * outW * 4, row);
+        });
+        return new DecodedFrame(outW, outH, out);
+    }
+
+    /**
+     * Decodes an image at full resolution, applies adjustments and writes the result to a new file.
+     * The file is written under a temporary name and moved into place when complete, so a cancelled
+     * or failed export leaves nothing behind. The format follows the target's extension.
+     *
+     * @param source      The original image, which is only read.
+     * @param adjustments The adjustments to apply.
+     * @param target      The file to write; must differ from the source.
+     * @param decoder     The decoder to read the original with.
+     * @param cancelled   Polled between stages and bands; the export stops once it returns true.
+     * @param progress    Receives the completed fraction, from 0 to 1.
+     * @return true if the file was written, false if the export was cancelled.
+     * @throws IOException If the image cannot be read or the result cannot be written.
+     */
+    public static boolean export(Path source, Adjustments adjustments, Path target, PooledImageDecoder decoder,
+                                 BooleanSupplier cancelled, DoubleConsumer progress) throws IOException {
+        if (source.toAbsolutePath().normalize().equals(target.toAbsolutePath().normalize())) {
+            throw new IOException("The original image is never overwritten; choose another file name");
+        }
+        String name = target.getFileName().toString();
+        String format = name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+        boolean alpha = !format.equals("jpg") && !format.equals("jpeg") && !format.equals("bmp");
+
+        PixelBufferPool pool = PixelBufferPool.shared();
+        DecodedFrame original = decoder.decode(source, Integer.MAX_VALUE, Integer.MAX_VALUE); // Subsampling 1.
+        progress.accept(0.3);
+        DecodedFrame edited;
+        try {
+            if (cancelled.getAsBoolean()) {
+                return false;
+            }
+            MemoryGovernor.shared().admit(0, (long) original.width() * original.height() * 4, name);
+            edited = render(original, adjustments, pool, cancelled, p -> progress.accept(0.3 + 0.4 * p));
+        } finally {
+            pool.release(original.pixels());
+        }
+        if (edited == null) {
+            return false;
+        }
+
+        BufferedImage image;
+        try {
+            MemoryGovernor.shared().admit((long) edited.width() * edited.height() * 4, 0, name);
+            image = toBufferedImage(edited, alpha);
+        } finally {
+            pool.release(edited.pixels());
+        }
+        if (cancelled.getAsBoolean()) {
+            return false;
+        }
+        progress.accept(0.8);
+
+        Path part = target.resolveSibling(name + ".part");
+        try {
+            write(image, format, part);
+            if (cancelled.getAsBoolean()) {
+                return false;
+            }
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(part);
+        }
+        progress.accept(1);
+        return true;
+    }
+
+    /**
+     * Applies the tone curve to a row of premultiplied BGRA pixels.
+     * Translucent pixels are un-premultiplied first so the curve sees their true colour.
+     */
+    private static void applyCurve(byte[] row, byte[] curve) {
+        for (int i = 0; i < row.length; i += 4) {
+            int a = row[i + 3] & 0xFF;
+            if (a == 0xFF) {
+                row[i] = curve[row[i] & 0xFF];
+                row[i + 1] = curve[row[i + 1] & 0xFF];
+                row[i + 2] = curve[row[i + 2] & 0xFF];
+            } else if (a != 0) {
+                for (int c = i; c < i + 3; c++) {
+                    int straight = Math.min(255, ((row[c] & 0xFF) * 255 + a / 2) / a);
+                    row[c] = (byte) (((curve[straight] & 0xFF) * a + 127) / 255);
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a frame to an ARGB (or opaque RGB) image for ImageIO, un-premultiplying its pixels.
+     */
+    private static BufferedImage toBufferedImage(DecodedFrame frame, boolean alpha) {
+        int w = frame.width();
+        BufferedImage image = new BufferedImage(w, frame.height(), alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        IntStream.range(0, frame.height()).parallel().forEach(y -> {
+            byte[] row = new byte[w * 4];
+            frame.pixels().get(y * w * 4, row);
+            for (int x = 0, i = 0; x < w; x++, i += 4) {
+                int a = row[i + 3] & 0xFF;
+                int b = row[i] & 0xFF;
+                int g = row[i + 1] & 0xFF;
+                int r = row[i + 2] & 0xFF;
+                if (a != 0xFF && a != 0) {
+                    b = Math.min(255, (b * 255 + a / 2) / a);
+                    g = Math.min(255, (g * 255 + a / 2) / a);
+                    r = Math.min(255, (r * 255 + a / 2) / a);
+                }
+                data[y * w + x] = a << 24 | r << 16 | g << 8 | b;
+            }
+        });
+        return image;
+    }
+
+    private static void write(BufferedImage image, String format, Path target) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersBySuffix(format);
+        if (!writers.hasNext()) {
+            throw new IOException("No image writer for format: " + format);
+        }
+        ImageWriter writer = writers.next();
+        try (OutputStream file = Files.newOutputStream(target);
+             ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed() && (format.equals("jpg") || format.equals("jpeg"))) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(EXPORT_JPEG_QUALITY);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.angeasla.pictureviewer.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * A non-destructive stack of edits applied to an image when it is displayed:
+ * crop, then rotation by quarter turns, then levels, gamma, brightness and contrast.
+ * <p>
+ * Edits never touch the original file. They are stored next to it in a small sidecar properties file
+ * named after the image with a {@code .pvedit} suffix (e.g. {@code photo.jpg.pvedit}), and applied
+ * whenever the image is shown. Crop insets are fractions of the image size, so the same edits
+ * apply to an image decoded at any resolution.
+ *
+ * @param quarterTurns Clockwise rotation in quarter turns, from 0 to 3.
+ * @param cropLeft     Fraction of the width removed on the left, before rotation.
+ * @param cropTop      Fraction of the height removed at the top, before rotation.
+ * @param cropRight    Fraction of the width removed on the right, before rotation.
+ * @param cropBottom   Fraction of the height removed at the bottom, before rotation.
+ * @param brightness   Offset added to every channel, from -1 to 1 (0 leaves the image unchanged).
+ * @param contrast     Contrast change around mid-grey, from -1 (flat grey) to 1 (double contrast).
+ * @param blackPoint   Input level mapped to black, from 0 to 254.
+ * @param whitePoint   Input level mapped to white, from 1 to 255.
+ * @param gamma        Midtone gamma applied after levels; values above 1 brighten the midtones.
+ */
+public record Adjustments(int quarterTurns, double cropLeft, double cropTop, double cropRight, double cropBottom,
+                          double brightness, double contrast, int blackPoint, int whitePoint, double gamma) {
+
+    /** The empty stack, which leaves an image unchanged. */
+    public static final Adjustments NONE = new Adjustments(0, 0, 0, 0, 0, 0, 0, 0, 255, 1);
+
+    private static final String SIDECAR_SUFFIX = ".pvedit";
+    private static final double MAX_CROP = 0.45; // Each inset, so at least a tenth of each side remains.
+
+    /**
+     * Normalizes the values into their valid ranges.
+     */
+    public Adjustments {
+        quarterTurns = Math.floorMod(quarterTurns, 4);
+        cropLeft = clamp(cropLeft, 0, MAX_CROP);
+        cropTop = clamp(cropTop, 0, MAX_CROP);
+        cropRight = clamp(cropRight, 0, MAX_CROP);
+        cropBottom = clamp(cropBottom, 0, MAX_CROP);
+        brightness = clamp(brightness, -1, 1);
+        contrast = clamp(contrast, -1, 1);
+        blackPoint = (int) clamp(blackPoint, 0, 254);
+        whitePoint = (int) clamp(whitePoint, blackPoint + 1, 255);
+        gamma = clamp(gamma, 0.1, 10);
+    }
+
+    /**
+     * Returns these adjustments rotated further by a number of quarter turns.
+     * @param turns Quarter turns to add, clockwise if positive.
+     * @return The rotated adjustments.
+     */
+    public Adjustments rotatedBy(int turns) {
+        return new Adjustments(quarterTurns + turns, cropLeft, cropTop, cropRight, cropBottom,
+                brightness, contrast, blackPoint, whitePoint, gamma);
+    }
+
+    /**
+     * Returns whether the stack changes anything at all.
+     * @return true if the image is shown unchanged.
+     */
+    public boolean isNone() {
+        return equals(NONE);
+    }
+
+    /**
+     * Builds the tone curve combining levels, gamma, brightness and contrast into a single lookup table,
+     * so applying all of them costs one table lookup per channel.
+     * @return 256 output levels indexed by input level.
+     */
+    public byte[] toneCurve() {
+        byte[] curve = new byte[256];
+        double contrastFactor = 1 + contrast;
+        for (int level = 0; level < 256; level++) {
+            double v = clamp((level - blackPoint) / (double) (whitePoint - blackPoint), 0, 1);
+            v = Math.pow(v, 1 / gamma);
+            v = (v - 0.5) * contrastFactor + 0.5 + brightness;
+            curve[level] = (byte) Math.round(clamp(v, 0, 1) * 255);
+        }
+        return curve;
+    }
+
+    /**
+     * Returns whether the tone curve is the identity, so pixels can be copied unchanged.
+     * @return true if levels, gamma, brightness and contrast are all neutral.
+     */
+    public boolean isToneNeutral() {
+        return brightness == 0 && contrast == 0 && blackPoint == 0 && whitePoint == 255 && gamma == 1;
+    }
+
+    /**
+     * Returns the sidecar file that holds the adjustments of an image.
+     * @param image The image file.
+     * @return The sidecar path next to the image.
+     */
+    public static Path sidecarOf(Path image) {
+        return image.resolveSibling(image.getFileName() + SIDECAR_SUFFIX);
+    }
+
+    /**
+     * Loads the adjustments of an image from its sidecar file.
+     * A missing or unreadable sidecar means no adjustments.
+     *
+     * @param image The image file.
+     * @return The stored adjustments, or {@link #NONE}.
+     */
+    public static Adjustments load(Path image) {
+        Path sidecar = sidecarOf(image);
+        if (!Files.isRegularFile(sidecar)) {
+            return NONE;
+        }
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(sidecar)) {
+            props.load(in);
+            return new Adjustments(
+                    Integer.parseInt(props.getProperty("rotate", "0")),
+                    Double.parseDouble(props.getProperty("crop.left", "0")),
+                    Double.parseDouble(props.getProperty("crop.top", "0")),
+                    Double.parseDouble(props.getProperty("crop.right", "0")),
+                    Double.parseDouble(props.getProperty("crop.bottom", "0")),
+                    Double.parseDouble(props.getProperty("brightness", "0")),
+                    Double.parseDouble(props.getProperty("contrast", "0")),
+                    Integer.parseInt(props.getProperty("levels.black", "0")),
+                    Integer.parseInt(props.getProperty("levels.white", "255")),
+                    Double.parseDouble(props.getProperty("gamma", "1")));
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Error reading adjustments: " + sidecar + " - " + e.getMessage());
+            return NONE;
+        }
+    }
+
+    /**
+     * Stores these adjustments in the image's sidecar file, or deletes the sidecar if there is nothing to store.
+     * The image itself is never modified.
+     *
+     * @param image The image file.
+     * @throws IOException If the sidecar cannot be written, e.g. for images inside archives.
+     */
+    public void save(Path image) throws IOException {
+        if (image.getFileSystem().isReadOnly()) {
+            throw new IOException("Adjustments cannot be stored for images inside archives");
+        }
+        Path sidecar = sidecarOf(image);
+        if (isNone()) {
+            Files.deleteIfExists(sidecar);
+            return;
+        }
+        Properties props = new Properties();
+        props.setProperty("rotate", Integer.toString(quarterTurns));
+        props.setProperty("crop.left", Double.toString(cropLeft));
+        props.setProperty("crop.top", Double.toString(cropTop));
+        props.setProperty("crop.right", Double.toString(cropRight));
+        props.setProperty("crop.bottom", Double.toString(cropBottom));
+        props.setProperty("brightness", Double.toString(brightness));
+        props.setProperty("contrast", Double.toString(contrast));
+        props.setProperty("levels.black", Integer.toString(blackPoint));
+        props.setProperty("levels.white", Integer.toString(whitePoint));
+        props.setProperty("gamma", Double.toString(gamma));
+        try (OutputStream out = Files.newOutputStream(sidecar)) {
+            props.store(out, "Picture Viewer adjustments for " + image.getFileName());
+        }
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
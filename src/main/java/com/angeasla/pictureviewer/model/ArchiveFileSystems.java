@@ -0,0 +1,151 @@
+package com.angeasla.pictureviewer.model;
+
+import com.angeasla.pictureviewer.util.ImageUtils;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Opens ZIP and CBZ archives as read-only file systems so they can be browsed like directories.
+ * Each archive is opened once through the NIO zip file system, which parses its central directory
+ * a single time; later visits reuse the open file system, so listing an archive again costs no I/O.
+ * Entries are read by streaming them from the archive, without extracting anything to disk.
+ * <p>
+ * Paths inside an archive keep its file system reachable, and paths are held in many places: the file list,
+ * the navigation history, a running slideshow, background decodes and caches. An archive is therefore never
+ * closed while the application runs. Under memory pressure the cache of open archives is released instead,
+ * after which an archive stays open only as long as some path inside it is still referenced; once none is,
+ * the garbage collector reclaims its central directory and closes its file.
+ */
+public class ArchiveFileSystems {
+
+    // Open archive file systems keyed by the archive's absolute path, whether or not they are still cached.
+    private static final Map<Path, WeakReference<FileSystem>> OPEN = new ConcurrentHashMap<>();
+    // Archive file systems kept open for reuse, until released under memory pressure.
+    private static final Map<Path, FileSystem> CACHED = new ConcurrentHashMap<>();
+    // The archive file each open file system was created from.
+    private static final Map<FileSystem, Path> ARCHIVES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Returns the root directory of an archive, opening the archive if it is not open yet.
+     *
+     * @param archive The ZIP or CBZ file.
+     * @return The root directory inside the archive.
+     * @throws IOException If the archive cannot be opened.
+     */
+    public static Path open(Path archive) throws IOException {
+        Path key = archive.toAbsolutePath().normalize();
+        FileSystem fs;
+        synchronized (ArchiveFileSystems.class) {
+            WeakReference<FileSystem> ref = OPEN.get(key);
+            fs = ref == null ? null : ref.get();
+            if (fs == null || !fs.isOpen()) {
+                fs = FileSystems.newFileSystem(key, Map.of("readOnly", "true"));
+                OPEN.put(key, new WeakReference<>(fs));
+                ARCHIVES.put(fs, key);
+            }
+            CACHED.put(key, fs); // Reused on later visits, until the cache is released.
+        }
+        return fs.getRootDirectories().iterator().next();
+    }
+
+    /**
+     * Returns the archive file a path inside an archive belongs to.
+     *
+     * @param path A path, possibly inside an archive.
+     * @return The archive file, or null if the path is on the default file system.
+     */
+    public static Path archiveOf(Path path) {
+        return ARCHIVES.get(path.getFileSystem());
+    }
+
+    /**
+     * Returns the directory to navigate to when going "Up" from a directory.
+     * Going up from the top level of an archive leads back to the archive file itself,
+     * and going up from the archive file leads to the directory containing it.
+     *
+     * @param dir The current directory, which may be an archive file or a directory inside an archive.
+     * @return The parent directory, or null if the directory is a file system root.
+     */
+    public static Path parentOf(Path dir) {
+        Path archive = archiveOf(dir);
+        if (archive == null) {
+            return dir.getParent();
+        }
+        Path parent = dir.getParent();
+        if (parent == null) {
+            return archive.getParent(); // At the archive root: leave the archive.
+        }
+        return parent.getParent() == null ? archive : parent; // Show the archive root as the archive itself.
+    }
+
+    /**
+     * Returns a human-readable path for display, in the form {@code archive.zip!/folder} for paths inside archives.
+     *
+     * @param path The path to display.
+     * @return The display string.
+     */
+    public static String displayPath(Path path) {
+        Path archive = archiveOf(path);
+        if (archive == null) {
+            return path.toAbsolutePath().normalize().toString();
+        }
+        return archive + "!" + path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Resolves a directory to list: archive files are opened and their root directory returned.
+     *
+     * @param dir A directory or an archive file.
+     * @return The directory whose contents should be listed.
+     * @throws IOException If the archive cannot be opened.
+     */
+    public static Path resolveListable(Path dir) throws IOException {
+        return !Files.isDirectory(dir) && ImageUtils.isArchive(dir) ? open(dir) : dir;
+    }
+
+    /**
+     * Stops keeping archives open for reuse. Archives still referenced by paths in use stay open and usable;
+     * the others are closed once the garbage collector finds them unreachable. Safe to call from any thread.
+     *
+     * @return The number of archives that were cached.
+     */
+    public static int releaseCache() {
+        synchronized (ArchiveFileSystems.class) {
+            int released = CACHED.size();
+            CACHED.clear();
+            OPEN.values().removeIf(ref -> ref.get() == null);
+            return released;
+        }
+    }
+
+    /**
+     * Closes every open archive. Called when the application exits.
+     */
+    public static void closeAll() {
+        synchronized (ArchiveFileSystems.class) {
+            for (Map.Entry<Path, WeakReference<FileSystem>> entry : OPEN.entrySet()) {
+                FileSystem fs = entry.getValue().get();
+                if (fs == null) {
+                    continue;
+                }
+                try {
+                    fs.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing archive: " + entry.getKey() + " - " + e.getMessage());
+                }
+            }
+            OPEN.clear();
+            CACHED.clear();
+            ARCHIVES.clear();
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package com.angeasla.pictureviewer.model;
+
+import com.angeasla.pictureviewer.codec.DecodeRequest;
+import com.angeasla.pictureviewer.codec.DecodedImage;
+import com.angeasla.pictureviewer.codec.DecoderRegistry;
+import com.angeasla.pictureviewer.codec.ImageSource;
+import com.angeasla.pictureviewer.util.MemoryGovernor;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Decoded images shared by every pane of the compare view: one screen-sized preview per file, plus tiles of
+ * the file at higher resolutions for the parts that are zoomed into.
+ * <p>
+ * Requests for an image that is already being decoded wait for that decode instead of starting another, so a
+ * file is decoded once however many panes show it. Tiles are {@value #TILE_SIZE} pixels square at the resolution
+ * they are decoded at, which is the full resolution reduced by 1, 2, 4 or 8. A tile is decoded together with the
+ * rest of its row, as one strip across the image that is then cut into tiles: decoders have to read everything
+ * above a region anyway, and JPEG decoders whole rows, so this reads the file once per row instead of once per
+ * tile. Only the rows a pane actually shows are requested. Tiles are decoded on their own low-priority threads,
+ * so they never hold up loading the previews or other images. Entries are keyed by the file's modification time,
+ * so an edited file is decoded again.
+ * <p>
+ * The cache holds at most {@code pictureviewer.compareCache.mb} megabytes (default 256), dropping the least
+ * recently used images first, and is emptied under memory pressure. Images still on screen stay displayed;
+ * they are simply decoded again the next time they are requested.
+ */
+public class DecodedImageCache {
+
+    /** The size of a tile, in pixels at the resolution it is decoded at. */
+    public static final int TILE_SIZE = 512;
+
+    /**
+     * A decoded image.
+     *
+     * @param image        The pixels, ready to display.
+     * @param sourceWidth  The full-resolution width of the image file.
+     * @param sourceHeight The full-resolution height of the image file.
+     * @param modified     The file's modification time when it was decoded, in milliseconds.
+     */
+    public record CachedImage(Image image, int sourceWidth, int sourceHeight, long modified) {
+    }
+
+    /**
+     * A request for an image, which no longer delivers the image once cancelled.
+     * A decode that has not started yet is skipped when every request waiting for it is cancelled.
+     */
+    public static final class Request {
+        private volatile boolean cancelled;
+
+        /**
+         * Stops the image from being delivered.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * Identifies a cached image. The preview of a file has reduction 0; tiles have the reduction they are decoded at.
+     * A decode job for a whole row of tiles has column {@link #STRIP}. A preview is requested with modification time
+     * {@link #UNKNOWN}, since the file is only looked at by the job; it is cached under the time the job finds.
+     */
+    private record Key(Path path, long modified, int reduction, int column, int row) {
+        Key strip() {
+            return new Key(path, modified, reduction, STRIP, row);
+        }
+    }
+
+    /**
+     * A request waiting for a decode job, for the image with the given key.
+     */
+    private record Waiter(Key key, Request request, Consumer<CachedImage> onReady) {
+    }
+
+    private static final int STRIP = -1;
+    private static final long UNKNOWN = -1;
+
+    private final Executor executor;
+    private final ThreadPoolExecutor tileExecutor;
+    private final int previewWidth;
+    private final int previewHeight;
+    private final long maxBytes;
+
+    // Decoded images, least recently used first. Guarded by this.
+    private final LinkedHashMap<Key, CachedImage> images = new LinkedHashMap<>(64, 0.75f, true);
+    // Requests waiting for decode jobs, by the key of the job: the preview's key, or a row's strip key. Guarded by this.
+    private final Map<Key, List<Waiter>> pending = new HashMap<>();
+    private long bytes; // The approximate size of the cached images. Guarded by this.
+
+    /**
+     * Constructs a DecodedImageCache. Tiles are decoded on a pool of its own below normal priority, with
+     * {@code pictureviewer.compareCache.tileThreads} threads (default: half the cores).
+     *
+     * @param executor      Runs the preview decodes in the background.
+     * @param previewWidth  The width previews must cover, normally the screen width in physical pixels.
+     * @param previewHeight The height previews must cover, normally the screen height in physical pixels.
+     */
+    public DecodedImageCache(Executor executor, int previewWidth, int previewHeight) {
+        this.executor = executor;
+        this.previewWidth = previewWidth;
+        this.previewHeight = previewHeight;
+        this.maxBytes = Long.getLong("pictureviewer.compareCache.mb", 256) * 1024 * 1024;
+        int threads = Integer.getInteger("pictureviewer.compareCache.tileThreads",
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        AtomicInteger threadCount = new AtomicInteger();
+        this.tileExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), task -> {
+            Thread thread = new Thread(task, "compare-tiles-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+
+        MemoryGovernor.shared().register(MemoryGovernor.CacheTier.THUMBNAILS, "compare image cache", () -> {
+            synchronized (this) {
+                long released = bytes;
+                images.clear();
+                bytes = 0;
+                return released;
+            }
+        });
+    }
+
+    /**
+     * Requests the screen-sized preview of an image.
+     *
+     * @param path    The image file.
+     * @param onReady Called on the JavaFX Application Thread with the preview, or with null if it cannot be decoded.
+     *                It is called after this method returns, even if the preview is cached: the file's
+     *                modification time is read on the executor, to find out whether the cached preview is current.
+     * @return The request, to cancel when the preview is no longer wanted.
+     */
+    public Request preview(Path path, Consumer<CachedImage> onReady) {
+        Key key = new Key(path, UNKNOWN, 0, 0, 0); // Never cached, so this always queues the job.
+        return get(key, key, DecodeRequest.cover(previewWidth, previewHeight), executor, onReady);
+    }
+
+    /**
+     * Requests a tile of an image at a higher resolution than its preview.
+     *
+     * @param path      The image file.
+     * @param preview   The image's preview, which gives its size and modification time.
+     * @param reduction The factor by which the full resolution is reduced: 1, 2, 4 or 8.
+     * @param column    The tile's column, see {@link #tileRegion}.
+     * @param row       The tile's row.
+     * @param onReady   Called on the JavaFX Application Thread with the tile, or with null if it cannot be decoded.
+     *                  If the tile is cached, it is called before this method returns.
+     * @return The request, to cancel when the tile is no longer wanted, e.g. because it scrolled out of view.
+     */
+    public Request tile(Path path, CachedImage preview, int reduction, int column, int row, Consumer<CachedImage> onReady) {
+        Rectangle region = stripRegion(preview, reduction, row);
+        // Ask for the row reduced by exactly the tiles' factor; decoders may only reduce less.
+        DecodeRequest request = DecodeRequest.cover(Math.max(1, region.width / reduction), Math.max(1, region.height / reduction))
+                .withRegion(region);
+        Key key = new Key(path, preview.modified(), reduction, column, row);
+        return get(key, key.strip(), request, tileExecutor, onReady);
+    }
+
+    /**
+     * Returns the part of an image a tile covers.
+     *
+     * @param preview   The image's preview, which gives its size.
+     * @param reduction The factor by which the tile's resolution is reduced.
+     * @param column    The tile's column, counted from the left edge of the image.
+     * @param row       The tile's row, counted from the top edge of the image.
+     * @return The tile's region in full-resolution pixels, clipped to the image.
+     */
+    public static Rectangle tileRegion(CachedImage preview, int reduction, int column, int row) {
+        int size = TILE_SIZE * reduction;
+        Rectangle tile = new Rectangle(column * size, row * size, size, size);
+        return tile.intersection(new Rectangle(0, 0, preview.sourceWidth(), preview.sourceHeight()));
+    }
+
+    /**
+     * Stops the tile threads. Called when the application exits.
+     */
+    public void shutdown() {
+        tileExecutor.shutdownNow();
+    }
+
+    /**
+     * Returns the part of an image a row of tiles covers.
+     */
+    private static Rectangle stripRegion(CachedImage preview, int reduction, int row) {
+        Rectangle first = tileRegion(preview, reduction, 0, row);
+        return new Rectangle(0, first.y, preview.sourceWidth(), first.height);
+    }
+
+    /**
+     * Delivers a cached image at once, or queues the request on the decode job that produces the image.
+     *
+     * @param key    The image wanted.
+     * @param job    The decode job producing it: the image itself, or the strip of tiles it belongs to.
+     * @param runner Runs the job if it is not queued yet.
+     */
+    private Request get(Key key, Key job, DecodeRequest decodeRequest, Executor runner, Consumer<CachedImage> onReady) {
+        Request request = new Request();
+        CachedImage cached;
+        synchronized (this) {
+            cached = images.get(key);
+            if (cached == null) {
+                List<Waiter> waiters = pending.get(job);
+                if (waiters != null) {
+                    waiters.add(new Waiter(key, request, onReady)); // Already being decoded for another pane or tile.
+                    return request;
+                }
+                waiters = new ArrayList<>();
+                waiters.add(new Waiter(key, request, onReady));
+                pending.put(job, waiters);
+            }
+        }
+        if (cached != null) {
+            onReady.accept(cached);
+        } else {
+            runner.execute(() -> decode(job, decodeRequest));
+        }
+        return request;
+    }
+
+    private void decode(Key job, DecodeRequest decodeRequest) {
+        synchronized (this) {
+            if (pending.get(job).stream().allMatch(waiter -> waiter.request().cancelled)) {
+                pending.remove(job); // Nobody wants it any more, e.g. a row of tiles that was panned past.
+                return;
+            }
+        }
+        Key resolved = job;
+        Map<Key, CachedImage> decoded = Map.of();
+        try {
+            if (job.modified() == UNKNOWN) {
+                resolved = current(job);
+                CachedImage cached;
+                synchronized (this) {
+                    cached = images.get(resolved);
+                }
+                decoded = cached != null ? Map.of(resolved, cached) : load(resolved, decodeRequest);
+            } else {
+                decoded = load(job, decodeRequest);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error decoding image: " + job.path() + " - " + e.getMessage());
+        } finally {
+            deliver(job, resolved, decoded); // Whatever happened, so that no request waits forever.
+        }
+    }
+
+    /**
+     * Returns a preview job's key with the file's current modification time.
+     */
+    private static Key current(Key job) {
+        long modified;
+        try {
+            modified = Files.getLastModifiedTime(job.path()).toMillis();
+        } catch (IOException e) {
+            modified = 0; // Decoding will report the error, if the file is really gone.
+        }
+        return new Key(job.path(), modified, job.reduction(), job.column(), job.row());
+    }
+
+    /**
+     * Caches the images a job decoded and answers the requests waiting for it, with null for the images it did not
+     * produce, e.g. because decoding failed. Requests for the job's own key get the image cached under the resolved
+     * key, which differs for previews.
+     */
+    private void deliver(Key job, Key resolved, Map<Key, CachedImage> results) {
+        List<Waiter> waiters;
+        synchronized (this) {
+            waiters = pending.remove(job);
+            for (Map.Entry<Key, CachedImage> entry : results.entrySet()) {
+                CachedImage previous = images.put(entry.getKey(), entry.getValue());
+                bytes += sizeOf(entry.getValue()) - (previous == null ? 0 : sizeOf(previous));
+            }
+            trim();
+        }
+        Platform.runLater(() -> {
+            for (Waiter waiter : waiters) {
+                if (!waiter.request().cancelled) {
+                    waiter.onReady().accept(results.get(waiter.key().equals(job) ? resolved : waiter.key()));
+                }
+            }
+        });
+    }
+
+    /**
+     * Decodes the image or strip of tiles a job produces, and copies it into JavaFX images.
+     *
+     * @return The decoded images: the preview, or every tile of the strip.
+     */
+    private Map<Key, CachedImage> load(Key job, DecodeRequest request) throws IOException {
+        String name = job.path().getFileName().toString();
+        MemoryGovernor governor = MemoryGovernor.shared();
+        try {
+            DecodedImage decoded = DecoderRegistry.shared().decode(ImageSource.of(job.path()), request, (type, width, height) -> {
+                // The decoded image and the JavaFX copy of it are both on the heap.
+                governor.admit((long) width * height * 8, 0, name);
+                return type == BufferedImage.TYPE_CUSTOM ? null : new BufferedImage(width, height, type);
+            });
+            int width = decoded.width();
+            int height = decoded.height();
+            BufferedImage argb = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D g = argb.createGraphics();
+            g.drawImage(decoded.image(), 0, 0, width, height, 0, 0, width, height, null);
+            g.dispose();
+            int[] pixels = ((DataBufferInt) argb.getRaster().getDataBuffer()).getData();
+            if (job.column() != STRIP) {
+                return Map.of(job, copy(pixels, width, 0, width, height, decoded, job.modified()));
+            }
+
+            // Cut the strip into tiles, at whatever resolution the decoder delivered it.
+            Map<Key, CachedImage> tiles = new HashMap<>();
+            int size = TILE_SIZE * job.reduction();
+            Rectangle strip = request.regionWithin(decoded.sourceWidth(), decoded.sourceHeight());
+            for (int column = 0; column * size < strip.width; column++) {
+                int left = (int) ((long) column * size * width / strip.width);
+                int right = (int) Math.min(width, (long) (column + 1) * size * width / strip.width);
+                Key key = new Key(job.path(), job.modified(), job.reduction(), column, job.row());
+                tiles.put(key, copy(pixels, width, left, right - left, height, decoded, job.modified()));
+            }
+            return tiles;
+        } catch (OutOfMemoryError e) {
+            governor.recordOutOfMemory(name);
+            throw new MemoryGovernor.LoadRefusedException(name + " does not fit in memory");
+        }
+    }
+
+    /**
+     * Copies the columns of a decoded image from x to x + width into a JavaFX image.
+     */
+    private static CachedImage copy(int[] pixels, int stride, int x, int width, int height, DecodedImage decoded, long modified) {
+        WritableImage image = new WritableImage(Math.max(1, width), Math.max(1, height));
+        image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbPreInstance(), pixels, x, stride);
+        return new CachedImage(image, decoded.sourceWidth(), decoded.sourceHeight(), modified);
+    }
+
+    /**
+     * Drops the least recently used images until the cache is within its size limit. Must hold the lock.
+     */
+    private void trim() {
+        Iterator<CachedImage> iterator = images.values().iterator();
+        while (bytes > maxBytes && images.size() > 1 && iterator.hasNext()) {
+            bytes -= sizeOf(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    private static long sizeOf(CachedImage image) {
+        return (long) image.image().getWidth() * (long) image.image().getHeight() * 4;
+    }
+}
@@ -1,31 +1,71 @@
 package com.angeasla.pictureviewer.model;
 
 import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ListView;
 import javafx.scene.control.Label;
+import javafx.scene.control.skin.VirtualFlow;
 import com.angeasla.pictureviewer.util.ImageUtils; // Import the utility for image checking
+import com.angeasla.pictureviewer.util.MemoryGovernor;
 
 import java.io.File;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
 
 /**
  * Manages directory navigation, file listing, and history within the Picture Viewer application.
  * It interacts with a ListView to display directory contents and a Label to show the current path.
+ * <p>
+ * Back and forward history entries keep a snapshot of the listing, the selection and the scroll position,
+ * so revisiting a directory swaps the snapshot straight into the ListView and restores the view as it was left.
+ * The directory is then listed again in the background and the view is updated only if its contents changed.
+ * The number of paths held in snapshots is capped ({@code pictureviewer.history.maxPaths}, default 50000);
+ * beyond that, the least recently visited entries drop their snapshot and are listed again when revisited.
+ * All history state is confined to the JavaFX Application Thread.
  */
 public class DirectoryNavigator {
 
+    /**
+     * A location in the navigation history together with the view state it was left in.
+     */
+    private static final class HistoryEntry {
+        final Path dir; // The directory, or null for the list of file system roots.
+        List<Path> listing; // Snapshot of the listing, or null once evicted.
+        Path selected; // The selected item, kept by path so it survives changes to the listing.
+        int selectedIndex = -1;
+        double scrollPosition; // VirtualFlow position, from 0 (top) to 1 (bottom).
+        long lastVisited; // Visit counter value, for least-recently-visited eviction.
+
+        HistoryEntry(Path dir) {
+            this.dir = dir;
+        }
+    }
+
+    // Rough heap cost of one snapshotted Path, reported to the memory governor when snapshots are shed.
+    private static final long BYTES_PER_SNAPSHOT_PATH = 160;
+
     private final ListView<Path> listView;
     private final Label currentPathLabel;
     private final ExecutorService loader;
+    private final int maxSnapshotPaths;
 
-    private final Deque<Path> history = new ArrayDeque<>();
+    private final Deque<HistoryEntry> backHistory = new ArrayDeque<>();
+    private final Deque<HistoryEntry> forwardHistory = new ArrayDeque<>();
+    private final ReadOnlyBooleanWrapper canGoBack = new ReadOnlyBooleanWrapper(false);
+    private final ReadOnlyBooleanWrapper canGoForward = new ReadOnlyBooleanWrapper(false);
+    private HistoryEntry current; // The location being shown, or null before the first one.
     private Path currentDir;
+    private long visitCounter;
+    private long navigation; // Incremented on every navigation, so that stale background listings are dropped.
+    private volatile long heldSnapshotPaths; // Paths held in history snapshots, readable by the memory governor.
 
     /**
      * Constructs a DirectoryNavigator.
@@ -38,6 +78,13 @@ public class DirectoryNavigator {
         this.listView = listView;
         this.currentPathLabel = currentPathLabel;
         this.loader = loader;
+        this.maxSnapshotPaths = Integer.getInteger("pictureviewer.history.maxPaths", 50_000);
+
+        // History snapshots are only a shortcut: under memory pressure revisits fall back to listing again.
+        MemoryGovernor.shared().register(MemoryGovernor.CacheTier.LISTING_CACHES, "history snapshots", () -> {
+            Platform.runLater(() -> evictSnapshots(0));
+            return heldSnapshotPaths * BYTES_PER_SNAPSHOT_PATH;
+        });
     }
 
     /**
@@ -45,57 +92,145 @@ public class DirectoryNavigator {
      * This method is called upon application start and when navigating "Up" from a root directory.
      */
     public void showAllRoots() {
-        currentDir = null; // Clear the current directory as we're showing roots.
-        history.clear(); // Clear navigation history.
-        Platform.runLater(() -> { // Update UI on JavaFX Application Thread.
-            listView.getItems().clear(); // Clear existing list items.
-            Arrays.stream(File.listRoots()) // Get all root file systems.
-                    .sorted((a, b) -> a.getAbsolutePath().compareToIgnoreCase(b.getAbsolutePath())) // Sort alphabetically.
-                    .map(File::toPath) // Convert File objects to Path objects.
-                    .forEach(listView.getItems()::add); // Add them to the ListView.
-
-            // Display appropriate root path indicator based on OS
-            String rootIndicator = System.getProperty("os.name").toLowerCase().contains("windows") ? 
-                "Drives" : "File System Roots";
-            currentPathLabel.setText(rootIndicator);
-        });
+        navigateTo(new HistoryEntry(null));
     }
 
     /**
-     * Opens a specified directory, populating the ListView with its contents (directories and images).
+     * Opens a specified directory, populating the ListView with its contents (directories, archives and images).
+     * ZIP and CBZ archives open like directories, see {@link ArchiveFileSystems}.
      * This operation is performed in a background thread.
      *
-     * @param dir The Path object representing the directory to open.
+     * @param dir The Path object representing the directory or archive to open.
      */
     public void openDir(Path dir) {
-        if (currentDir != null) {
-            history.push(currentDir); // Save current directory to history before navigating.
+        navigateTo(new HistoryEntry(dir));
+    }
+
+    /**
+     * Goes back to the previous location in the history, restoring its listing, selection and scroll position.
+     * @return true if there was a location to go back to, false otherwise.
+     */
+    public boolean goBack() {
+        return step(backHistory, forwardHistory);
+    }
+
+    /**
+     * Goes forward to the location left by {@link #goBack()}, restoring its listing, selection and scroll position.
+     * @return true if there was a location to go forward to, false otherwise.
+     */
+    public boolean goForward() {
+        return step(forwardHistory, backHistory);
+    }
+
+    /**
+     * Returns whether there is a location to go back to.
+     * @return A read-only property that is true while the back history is not empty.
+     */
+    public ReadOnlyBooleanProperty canGoBackProperty() {
+        return canGoBack.getReadOnlyProperty();
+    }
+
+    /**
+     * Returns whether there is a location to go forward to.
+     * @return A read-only property that is true while the forward history is not empty.
+     */
+    public ReadOnlyBooleanProperty canGoForwardProperty() {
+        return canGoForward.getReadOnlyProperty();
+    }
+
+    /**
+     * Returns the current directory.
+     * @return The current directory Path.
+     */
+    public Path getCurrentDir() {
+        return currentDir;
+    }
+
+    /**
+     * Returns the image files in the current listing, in display order.
+     * Directories are excluded; the listing is already filtered to directories and images.
+     * @return The image files currently shown in the ListView.
+     */
+    public List<Path> getImageFiles() {
+        return listView.getItems().stream()
+                .filter(ImageUtils::isImage)
+                .toList();
+    }
+
+    /**
+     * Leaves the current location for a new one, which clears the forward history.
+     */
+    private void navigateTo(HistoryEntry target) {
+        if (current != null) {
+            saveViewState(current);
+            backHistory.push(current);
+        }
+        forwardHistory.clear();
+        show(target);
+    }
+
+    /**
+     * Moves one entry from one history stack to the other, leaving the current location on the opposite stack.
+     */
+    private boolean step(Deque<HistoryEntry> from, Deque<HistoryEntry> to) {
+        if (from.isEmpty()) {
+            return false;
         }
-        currentDir = dir; // Set the new current directory.
+        saveViewState(current);
+        to.push(current);
+        show(from.pop());
+        return true;
+    }
+
+    /**
+     * Makes an entry the current location. A snapshot is swapped in immediately and revalidated in the background;
+     * without one, the ListView is filled once the background listing completes.
+     */
+    private void show(HistoryEntry entry) {
+        current = entry;
+        currentDir = entry.dir;
+        entry.lastVisited = ++visitCounter;
+        long generation = ++navigation;
+        canGoBack.set(!backHistory.isEmpty());
+        canGoForward.set(!forwardHistory.isEmpty());
+
+        if (entry.listing != null) {
+            listView.getItems().setAll(entry.listing);
+            currentPathLabel.setText(describe(entry.dir));
+            restoreViewState(entry);
+        } else {
+            listView.getItems().clear();
+        }
+        evictSnapshots(maxSnapshotPaths);
 
         // Submit directory listing and file filtering to a background thread.
         loader.submit(() -> {
-            try (var s = Files.list(dir)) { // List contents of the directory.
-                var files = s.filter(p -> Files.isDirectory(p) || ImageUtils.isImage(p.toFile())) // Filter for directories and images.
-                        .sorted((a, b) -> { // Sort: directories first, then files, both alphabetically.
-                            boolean da = Files.isDirectory(a);
-                            boolean db = Files.isDirectory(b);
-                            return da == db ? a.compareTo(b) : da ? -1 : 1;
-                        })
-                        .toArray(Path[]::new); // Collect results into an array.
+            try {
+                List<Path> files = list(entry.dir);
 
                 Platform.runLater(() -> { // Update UI on JavaFX Application Thread.
-                    listView.getItems().setAll(files); // Update ListView with new directory contents.
-                    currentPathLabel.setText(dir.toAbsolutePath().normalize().toString() + ">"); // Update path label.
+                    if (generation != navigation) {
+                        return; // The user has navigated elsewhere in the meantime.
+                    }
+                    if (!files.equals(listView.getItems())) {
+                        if (entry.listing != null) {
+                            saveViewState(entry); // Keep what the user did with the snapshot while it was revalidated.
+                        }
+                        listView.getItems().setAll(files); // Update ListView with new directory contents.
+                        restoreViewState(entry);
+                    }
+                    entry.listing = files;
+                    currentPathLabel.setText(describe(entry.dir)); // Update path label.
                 });
 
             } catch (Exception e) {
-                System.err.println("Error opening directory: " + dir.toString() + " - " + e.getMessage());
+                System.err.println("Error opening directory: " + entry.dir + " - " + e.getMessage());
                 Platform.runLater(() -> { // Show error dialog on JavaFX Application Thread.
                     Alert alert = new Alert(Alert.AlertType.ERROR);
                     alert.setTitle("Error");
                     alert.setHeaderText("Could not open directory");
-                    alert.setContentText("An error occurred while trying to open: " + dir.getFileName() + "\n" + e.getMessage());
+                    alert.setContentText("An error occurred while trying to open: "
+                            + (entry.dir == null ? "" : entry.dir.getFileName()) + "\n" + e.getMessage());
                     alert.showAndWait();
                 });
             }
@@ -103,26 +238,87 @@ public class DirectoryNavigator {
     }
 
     /**
-     * Returns the current directory.
-     * @return The current directory Path.
+     * Lists a directory, or the file system roots when dir is null.
      */
-    public Path getCurrentDir() {
-        return currentDir;
+    private static List<Path> list(Path dir) throws Exception {
+        if (dir == null) {
+            return Arrays.stream(File.listRoots()) // Get all root file systems.
+                    .sorted((a, b) -> a.getAbsolutePath().compareToIgnoreCase(b.getAbsolutePath())) // Sort alphabetically.
+                    .map(File::toPath) // Convert File objects to Path objects.
+                    .toList();
+        }
+        return ImageUtils.listDirectory(ArchiveFileSystems.resolveListable(dir)); // Directories first, then images.
+    }
+
+    /**
+     * Returns the path label text for a location.
+     */
+    private static String describe(Path dir) {
+        if (dir == null) {
+            // Display appropriate root path indicator based on OS
+            return System.getProperty("os.name").toLowerCase().contains("windows") ? "Drives" : "File System Roots";
+        }
+        return ArchiveFileSystems.displayPath(dir) + ">";
+    }
+
+    /**
+     * Records the current listing, selection and scroll position in an entry.
+     */
+    private void saveViewState(HistoryEntry entry) {
+        if (entry.listing == null && listView.getItems().isEmpty()) {
+            return; // Still loading: nothing worth keeping.
+        }
+        entry.listing = List.copyOf(listView.getItems());
+        entry.selected = listView.getSelectionModel().getSelectedItem();
+        entry.selectedIndex = listView.getSelectionModel().getSelectedIndex();
+        VirtualFlow<?> flow = virtualFlow();
+        entry.scrollPosition = flow == null ? 0 : flow.getPosition();
     }
 
     /**
-     * Navigates back in history by retrieving the previous directory.
-     * @return The previous directory Path, or null if history is empty.
+     * Restores an entry's selection and scroll position on the ListView, which already shows its listing.
+     * The selection follows the selected path if the listing changed, and falls back to the same index otherwise.
      */
-    public Path popHistory() {
-        return history.isEmpty() ? null : history.pop();
+    private void restoreViewState(HistoryEntry entry) {
+        int index = entry.selected == null ? -1 : listView.getItems().indexOf(entry.selected);
+        if (index < 0 && entry.selectedIndex >= 0) {
+            index = Math.min(entry.selectedIndex, listView.getItems().size() - 1);
+        }
+        if (index >= 0) {
+            listView.getSelectionModel().clearAndSelect(index); // The list allows several selected items.
+        } else {
+            listView.getSelectionModel().clearSelection();
+        }
+        VirtualFlow<?> flow = virtualFlow();
+        if (flow != null) {
+            flow.setPosition(entry.scrollPosition);
+        } else if (index >= 0) {
+            listView.scrollTo(index); // Not laid out yet: at least bring the selection into view.
+        }
+    }
+
+    private VirtualFlow<?> virtualFlow() {
+        return listView.lookup(".virtual-flow") instanceof VirtualFlow<?> flow ? flow : null;
     }
 
     /**
-     * Checks if there are previous directories in the history.
-     * @return true if history is not empty, false otherwise.
+     * Drops snapshots, least recently visited first, until at most maxPaths paths are held.
+     * The current location's listing is shown in the ListView anyway, so it is never counted or dropped.
      */
-    public boolean hasHistory() {
-        return !history.isEmpty();
+    private void evictSnapshots(long maxPaths) {
+        long held = Stream.concat(backHistory.stream(), forwardHistory.stream())
+                .map(e -> e.listing)
+                .filter(Objects::nonNull)
+                .mapToLong(List::size)
+                .sum();
+        while (held > maxPaths) {
+            HistoryEntry oldest = Stream.concat(backHistory.stream(), forwardHistory.stream())
+                    .filter(e -> e.listing != null)
+                    .min((a, b) -> Long.compare(a.lastVisited, b.lastVisited))
+                    .orElseThrow();
+            held -= oldest.listing.size();
+            oldest.listing = null; // Keep the selection, so a relisted directory still opens where it was left.
+        }
+        heldSnapshotPaths = held;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,259 @@
+package com.angeasla.pictureviewer.model;
+
+import com.angeasla.pictureviewer.util.ImageUtils;
+import com.angeasla.pictureviewer.util.MemoryGovernor;
+import javafx.application.Platform;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Counts the images in a folder and its subfolders, and their total size, for display in the file list.
+ * <p>
+ * The traversal is a fork-join task per directory, run on a dedicated pool of minimum-priority threads, so
+ * a deep tree is walked on spare cores without competing with the interactive loader. Directory visits are
+ * also throttled to a fixed rate ({@code pictureviewer.folderStats.dirsPerSecond}, default 2000), and pause
+ * entirely while the foreground loader is busy, so opening a folder or image never waits behind a scan.
+ * <p>
+ * Results are cached per directory along with the directory's modification time. A directory whose time is
+ * unchanged is not listed again; only its subdirectories are checked, with one stat each. Results checked in
+ * the last few seconds are reused without touching the disk. A file rewritten in place without any directory
+ * changing is not noticed until the cache is shed under memory pressure. Symbolic links are not followed.
+ */
+public class FolderStatistics {
+
+    /**
+     * Totals for a folder and everything below it.
+     *
+     * @param images The number of image files.
+     * @param bytes  The total size of all regular files, images or not.
+     */
+    public record Stats(int images, long bytes) {
+    }
+
+    /**
+     * A pending computation, which stops walking the tree once cancelled.
+     * Subfolders finished before the cancellation stay cached, so a later request resumes where this one stopped.
+     */
+    public static final class Request {
+        private volatile boolean cancelled;
+
+        /**
+         * Stops the computation and suppresses its result.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * What is known about one directory: its own files, its subdirectories and the total below it.
+     */
+    private record Entry(FileTime modified, int ownImages, long ownBytes, List<Path> subdirectories, Stats total, long checkedAt) {
+    }
+
+    private static final Stats EMPTY = new Stats(0, 0);
+    private static final long FRESH_NANOS = TimeUnit.SECONDS.toNanos(10); // Reuse results this recent without a stat.
+    private static final long FOREGROUND_PAUSE_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    // Rough heap cost of a cache entry and of each subdirectory path it lists, for memory reporting.
+    private static final long BYTES_PER_ENTRY = 240;
+    private static final long BYTES_PER_SUBDIRECTORY = 120;
+
+    private final ConcurrentHashMap<Path, Entry> cache = new ConcurrentHashMap<>();
+    private final ForkJoinPool pool;
+    private final BooleanSupplier foregroundBusy;
+    private final long visitIntervalNanos;
+    private final AtomicLong nextVisit = new AtomicLong(System.nanoTime()); // Earliest time the next directory may be read.
+
+    /**
+     * Constructs a FolderStatistics service with its own low-priority thread pool.
+     *
+     * @param foregroundBusy Tells whether interactive loads are running; the traversal waits while it returns true.
+     */
+    public FolderStatistics(BooleanSupplier foregroundBusy) {
+        this.foregroundBusy = foregroundBusy;
+        int threads = Integer.getInteger("pictureviewer.folderStats.threads",
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        int dirsPerSecond = Math.max(1, Integer.getInteger("pictureviewer.folderStats.dirsPerSecond", 2000));
+        this.visitIntervalNanos = TimeUnit.SECONDS.toNanos(1) / dirsPerSecond;
+        this.pool = new ForkJoinPool(threads, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("folder-stats-" + thread.getPoolIndex());
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }, null, false);
+
+        // The cache only saves disk reads: under memory pressure folders are simply walked again.
+        MemoryGovernor.shared().register(MemoryGovernor.CacheTier.LISTING_CACHES, "folder statistics", () -> {
+            long bytes = cache.values().stream().mapToLong(FolderStatistics::sizeOf).sum();
+            cache.clear();
+            return bytes;
+        });
+    }
+
+    /**
+     * Returns a folder's statistics if they were computed or checked in the last few seconds, without any disk access.
+     *
+     * @param dir The folder.
+     * @return The statistics, or null if they need to be computed.
+     */
+    public Stats getIfFresh(Path dir) {
+        Entry entry = cache.get(dir);
+        return entry != null && System.nanoTime() - entry.checkedAt() < FRESH_NANOS ? entry.total() : null;
+    }
+
+    /**
+     * Computes a folder's statistics in the background.
+     *
+     * @param dir      The folder.
+     * @param onResult Called on the JavaFX Application Thread with the result, unless the request is cancelled first.
+     * @return The request, to cancel when the result is no longer wanted.
+     */
+    public Request request(Path dir, Consumer<Stats> onResult) {
+        Request request = new Request();
+        pool.execute(ForkJoinTask.adapt(() -> {
+            Stats stats = new DirectoryTask(dir, request).invoke();
+            if (stats != null && !request.cancelled) {
+                Platform.runLater(() -> {
+                    if (!request.cancelled) {
+                        onResult.accept(stats);
+                    }
+                });
+            }
+        }));
+        return request;
+    }
+
+    /**
+     * Stops all traversals. Called when the application exits.
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private static long sizeOf(Entry entry) {
+        return BYTES_PER_ENTRY + entry.subdirectories().size() * BYTES_PER_SUBDIRECTORY;
+    }
+
+    /**
+     * Waits until the foreground loader is idle and the next directory visit is due.
+     * @return false if the request was cancelled or the thread interrupted while waiting.
+     */
+    private boolean awaitTurn(Request request) {
+        while (foregroundBusy.getAsBoolean()) {
+            LockSupport.parkNanos(FOREGROUND_PAUSE_NANOS);
+            if (request.cancelled || Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+        }
+        long now = System.nanoTime();
+        long due = nextVisit.accumulateAndGet(now, (next, time) -> Math.max(next, time) + visitIntervalNanos) - visitIntervalNanos;
+        if (due > now) {
+            LockSupport.parkNanos(due - now);
+        }
+        return !request.cancelled && !Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Computes the totals for one directory, forking a task per subdirectory. Returns null once cancelled.
+     */
+    private final class DirectoryTask extends RecursiveTask<Stats> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final Request request;
+
+        DirectoryTask(Path dir, Request request) {
+            this.dir = dir;
+            this.request = request;
+        }
+
+        @Override
+        protected Stats compute() {
+            if (request.cancelled) {
+                return null;
+            }
+            Entry cached = cache.get(dir);
+            if (cached != null && System.nanoTime() - cached.checkedAt() < FRESH_NANOS) {
+                return cached.total();
+            }
+            if (!awaitTurn(request)) {
+                return null;
+            }
+
+            FileTime modified;
+            int ownImages = 0;
+            long ownBytes = 0;
+            List<Path> subdirectories;
+            try {
+                modified = Files.getLastModifiedTime(dir);
+                if (cached != null && cached.modified().equals(modified)) {
+                    // No entries were added or removed: only the subdirectories need checking.
+                    ownImages = cached.ownImages();
+                    ownBytes = cached.ownBytes();
+                    subdirectories = cached.subdirectories();
+                } else {
+                    subdirectories = new ArrayList<>();
+                    try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                        for (Path entry : entries) {
+                            BasicFileAttributes attributes;
+                            try {
+                                attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                            } catch (IOException e) {
+                                continue; // Deleted while listing, or unreadable.
+                            }
+                            if (attributes.isDirectory()) {
+                                subdirectories.add(entry);
+                            } else if (attributes.isRegularFile()) {
+                                ownBytes += attributes.size();
+                                if (ImageUtils.isImage(entry)) {
+                                    ownImages++;
+                                }
+                            }
+                        }
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException | UncheckedIOException e) {
+                return EMPTY; // Unreadable folders count as empty.
+            }
+
+            List<DirectoryTask> children = new ArrayList<>(subdirectories.size());
+            for (Path subdirectory : subdirectories) {
+                children.add(new DirectoryTask(subdirectory, request));
+            }
+            invokeAll(children);
+            int images = ownImages;
+            long bytes = ownBytes;
+            for (DirectoryTask child : children) {
+                Stats stats = child.join();
+                if (stats == null) {
+                    return null; // Cancelled: this directory's total is incomplete, so it is not cached.
+                }
+                images += stats.images();
+                bytes += stats.bytes();
+            }
+            Stats total = new Stats(images, bytes);
+            cache.put(dir, new Entry(modified, ownImages, ownBytes, List.copyOf(subdirectories), total, System.nanoTime()));
+            return total;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.angeasla.pictureviewer.model;
+
+import com.angeasla.pictureviewer.codec.DecodeRequest;
+import com.angeasla.pictureviewer.codec.DecodedImage;
+import com.angeasla.pictureviewer.codec.DecoderRegistry;
+import com.angeasla.pictureviewer.codec.ImageDecoder;
+import com.angeasla.pictureviewer.codec.ImageFormat;
+import com.angeasla.pictureviewer.codec.ImageSource;
+import com.angeasla.pictureviewer.util.MemoryGovernor;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Drives a slideshow over a fixed list of image files.
+ * A decode-ahead window keeps the next few slides decoded at screen resolution on background threads,
+ * so that each transition only has to swap an already decoded Image on its tick.
+ * Ticks are scheduled at a fixed rate against absolute deadlines, so a slow tick never shifts the ones after it.
+ */
+public class SlideshowPipeline {
+
+    /**
+     * What to do when the slide due on a tick has not finished decoding yet.
+     */
+    public enum SlowFramePolicy {
+        /** Drop the late slide and show the next one that is already decoded, if any. */
+        SKIP,
+        /** Keep the current slide on screen and try the late slide again on the next tick. */
+        HOLD
+    }
+
+    private final List<Path> slides;
+    private final long intervalMillis;
+    private final int lookahead;
+    private final SlowFramePolicy policy;
+    private final double frameWidth;
+    private final double frameHeight;
+
+    private final ScheduledExecutorService ticker;
+    private final ExecutorService decoder;
+
+    // Decode-ahead window keyed by slide sequence number. Only modified on the ticker thread.
+    private final Map<Long, CompletableFuture<Image>> window = new ConcurrentHashMap<>();
+    // Written only by the ticker; volatile so the memory governor's shedder sees a current value.
+    private volatile long nextSequence;
+
+    private final AtomicInteger missedDeadlines = new AtomicInteger();
+    private final AtomicInteger slidesShown = new AtomicInteger();
+    private volatile boolean running;
+    private Runnable unregisterShedder = () -> { };
+
+    /**
+     * Constructs a SlideshowPipeline.
+     *
+     * @param slides         The image files to show, in order. The slideshow loops over them.
+     * @param startIndex     Index of the first slide to show.
+     * @param intervalMillis Time each slide stays on screen, in milliseconds.
+     * @param lookahead      Number of upcoming slides to keep decoded ahead of time (at least 1).
+     * @param policy         How to handle slides that are not decoded by their deadline.
+     * @param frameWidth     Width in pixels to decode slides at (usually the screen width).
+     * @param frameHeight    Height in pixels to decode slides at (usually the screen height).
+     */
+    public SlideshowPipeline(List<Path> slides, int startIndex, long intervalMillis, int lookahead,
+                             SlowFramePolicy policy, double frameWidth, double frameHeight) {
+        if (slides.isEmpty()) {
+            throw new IllegalArgumentException("A slideshow needs at least one slide");
+        }
+        this.slides = List.copyOf(slides);
+        this.nextSequence = Math.floorMod(startIndex, slides.size());
+        this.intervalMillis = Math.max(1, intervalMillis);
+        this.lookahead = Math.max(1, lookahead);
+        this.policy = policy;
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "slideshow-ticker"));
+        int decodeThreads = Math.max(1, Math.min(this.lookahead, Runtime.getRuntime().availableProcessors() - 1));
+        this.decoder = Executors.newFixedThreadPool(decodeThreads, r -> daemon(r, "slideshow-decoder"));
+    }
+
+    /**
+     * Starts the slideshow. The first slide is shown as soon as it is decoded,
+     * after which the slides advance on every tick.
+     *
+     * @param onFrame Receives each slide to display. Always called on the JavaFX Application Thread.
+     */
+    public void start(Consumer<Image> onFrame) {
+        running = true;
+        unregisterShedder = MemoryGovernor.shared().register(MemoryGovernor.CacheTier.PREFETCHED_IMAGES,
+                "slideshow decode-ahead", this::shedPrefetched);
+        ticker.execute(() -> {
+            fillWindow();
+            // The first slide has no deadline to miss, so wait for it before starting the clock.
+            Image first;
+            try {
+                first = window.remove(nextSequence).get();
+            } catch (InterruptedException | ExecutionException e) {
+                return; // Stopped before the first slide was ready.
+            }
+            nextSequence++;
+            fillWindow();
+            show(first, onFrame);
+            ticker.scheduleAtFixedRate(() -> tick(onFrame), intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    /**
+     * Stops the slideshow and releases its background threads. Pending decodes are abandoned.
+     * With {@code -Dpictureviewer.diagnostics=true}, a summary of shown slides and missed deadlines is logged.
+     */
+    public void stop() {
+        running = false;
+        unregisterShedder.run();
+        ticker.shutdownNow();
+        decoder.shutdownNow();
+        if (Boolean.getBoolean("pictureviewer.diagnostics")) {
+            System.err.println("Slideshow stopped: " + slidesShown.get() + " slides shown, "
+                    + missedDeadlines.get() + " missed deadlines.");
+        }
+    }
+
+    /**
+     * Returns the number of ticks on which the due slide had not finished decoding.
+     * @return The number of missed deadlines so far.
+     */
+    public int getMissedDeadlines() {
+        return missedDeadlines.get();
+    }
+
+    /**
+     * Returns the number of slides displayed so far.
+     * @return The number of slides shown.
+     */
+    public int getSlidesShown() {
+        return slidesShown.get();
+    }
+
+    /**
+     * Runs on the ticker thread at every deadline and advances to the next decoded slide.
+     */
+    private void tick(Consumer<Image> onFrame) {
+        CompletableFuture<Image> due = window.get(nextSequence);
+        if (due != null && due.isDone()) {
+            window.remove(nextSequence);
+            nextSequence++;
+            fillWindow();
+            show(decodedSlide(due), onFrame);
+            return;
+        }
+
+        missedDeadlines.incrementAndGet();
+        if (policy == SlowFramePolicy.SKIP) {
+            // Look for a later slide in the window that is already decoded and jump to it.
+            for (long seq = nextSequence + 1; seq < nextSequence + lookahead; seq++) {
+                CompletableFuture<Image> candidate = window.get(seq);
+                if (candidate != null && candidate.isDone()) {
+                    for (long dropped = nextSequence; dropped < seq; dropped++) {
+                        window.remove(dropped).cancel(true);
+                    }
+                    window.remove(seq);
+                    nextSequence = seq + 1;
+                    fillWindow();
+                    show(decodedSlide(candidate), onFrame);
+                    return;
+                }
+            }
+        }
+        // HOLD, or nothing ready to skip to: the current slide stays on screen until the next tick.
+    }
+
+    /**
+     * Returns the slide a finished decode produced, or null if the decode failed or was cancelled.
+     * Nothing may be thrown on the ticker thread: an exception would cancel all further ticks.
+     */
+    private static Image decodedSlide(CompletableFuture<Image> done) {
+        return done.isCompletedExceptionally() ? null : done.getNow(null);
+    }
+
+    /**
+     * Tops up the decode-ahead window so that the next {@code lookahead} slides are being decoded.
+     * While the memory governor reports pressure, only the next slide is decoded ahead.
+     */
+    private void fillWindow() {
+        int size = MemoryGovernor.shared().getLevel() == MemoryGovernor.Level.NORMAL ? lookahead : 1;
+        for (long seq = nextSequence; seq < nextSequence + size; seq++) {
+            if (!window.containsKey(seq)) {
+                Path slide = slides.get((int) (seq % slides.size()));
+                window.put(seq, CompletableFuture.supplyAsync(() -> decode(slide), decoder));
+            }
+        }
+    }
+
+    /**
+     * Drops the decoded slides waiting in the window, keeping only the next one.
+     * Until pressure eases, {@link #fillWindow()} only decodes one slide ahead, so slides are decoded just in time.
+     * Runs on the governor thread: the estimate uses one read of the sequence, and the removal runs on the ticker.
+     * @return The approximate number of bytes held by the slides that were dropped.
+     */
+    private long shedPrefetched() {
+        long next = nextSequence;
+        long bytes = 0;
+        for (long seq = next + 1; seq < next + lookahead; seq++) {
+            CompletableFuture<Image> f = window.get(seq);
+            Image image = f != null && f.isDone() && !f.isCompletedExceptionally() ? f.getNow(null) : null;
+            if (image != null) {
+                bytes += (long) (image.getWidth() * image.getHeight() * 4);
+            }
+        }
+        ticker.execute(() -> {
+            for (long seq = nextSequence + 1; seq < nextSequence + lookahead; seq++) {
+                CompletableFuture<Image> f = window.remove(seq);
+                if (f != null) {
+                    f.cancel(true);
+                }
+            }
+        });
+        return bytes;
+    }
+
+    /**
+     * Decodes a slide synchronously at frame resolution. Failed decodes yield null and leave the previous slide on screen.
+     * GIFs are loaded by JavaFX so that animated slides keep playing; everything else goes through the decoder registry,
+     * which reduces large JPEGs while decoding and reads formats JavaFX does not, such as TIFF.
+     */
+    private Image decode(Path slide) {
+        // Stream the file rather than loading by URL, so that slides inside archives work too.
+        try {
+            ImageSource source = ImageSource.of(slide);
+            if (ImageFormat.probe(source) == ImageFormat.GIF) {
+                try (InputStream in = source.open()) {
+                    Image image = new Image(in, frameWidth, frameHeight, true, true);
+                    if (image.isError()) {
+                        throw new IOException(image.getException());
+                    }
+                    return image;
+                }
+            }
+            DecodedImage decoded = DecoderRegistry.shared().decode(source,
+                    DecodeRequest.contain((int) frameWidth, (int) frameHeight), ImageDecoder.Destination.NEW);
+            return toFrame(decoded);
+        } catch (IOException | RuntimeException e) {
+            // Decoders may also fail with runtime exceptions on corrupt files, or when an archive was closed.
+            System.err.println("Error decoding slide: " + slide + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Scales a decoded image to fit the frame, keeping its aspect ratio, and copies it into a JavaFX image.
+     * Decoders reduce by at most half too much, so one bilinear step keeps the quality of a smooth JavaFX load.
+     */
+    private Image toFrame(DecodedImage decoded) {
+        double ratio = Math.min(1.0, Math.min(frameWidth / decoded.sourceWidth(), frameHeight / decoded.sourceHeight()));
+        int width = Math.max(1, Math.min(decoded.width(), (int) Math.round(decoded.sourceWidth() * ratio)));
+        int height = Math.max(1, Math.min(decoded.height(), (int) Math.round(decoded.sourceHeight() * ratio)));
+        BufferedImage frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = frame.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(decoded.image(), 0, 0, width, height, 0, 0, decoded.width(), decoded.height(), null);
+        g.dispose();
+        int[] pixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+        WritableImage image = new WritableImage(width, height);
+        image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbPreInstance(), pixels, 0, width);
+        return image;
+    }
+
+    private void show(Image image, Consumer<Image> onFrame) {
+        if (!running || image == null) {
+            return;
+        }
+        slidesShown.incrementAndGet();
+        Platform.runLater(() -> {
+            if (running) {
+                onFrame.accept(image);
+            }
+        });
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+}
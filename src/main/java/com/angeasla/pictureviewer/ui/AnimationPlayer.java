@@ -0,0 +1,545 @@
+package com.angeasla.pictureviewer.ui;
+
+import com.angeasla.pictureviewer.util.PixelBufferPool;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.stage.Stage;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays an animated image by decoding its frames incrementally, instead of holding every frame decoded.
+ * <p>
+ * A background thread composes frames one at a time onto a canvas and copies each result into a small ring
+ * of reusable off-heap buffers. The JavaFX side shows a filled buffer when its frame is due and hands the
+ * previous one back for reuse. When the ring is full the decoder blocks, so decoding runs only as far ahead
+ * as the ring allows, and stops completely once the player is stopped. A buffer taken off screen is only
+ * reused after the next frame has been shown as well, so the decoder never rewrites pixels that may still be
+ * being rendered.
+ * <p>
+ * Playback can be paused and stepped frame by frame; stepping seeks by composing forward from the nearest
+ * keyframe.
+ * <p>
+ * Memory is bounded by the ring, set with the {@code pictureviewer.animation.ringFrames} and
+ * {@code pictureviewer.animation.maxMB} system properties, plus one canvas-sized composition buffer.
+ * Frame timing and disposal are read from GIF metadata; other multi-frame formats readable by an installed
+ * ImageIO plugin play with a default delay.
+ */
+public class AnimationPlayer {
+
+    private static final int RING_FRAMES = Math.max(3, Integer.getInteger("pictureviewer.animation.ringFrames", 4));
+    private static final long MAX_RING_BYTES = Long.getLong("pictureviewer.animation.maxMB", 64) * 1024 * 1024;
+    // Browsers treat GIF delays of 0 or 1 hundredths of a second as 100 ms; do the same.
+    private static final long DEFAULT_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final String GIF_METADATA_FORMAT = "javax_imageio_gif_image_1.0";
+    // How often a decoder waiting for a free slot checks for stop and seek requests.
+    private static final long SLOT_POLL_MILLIS = 50;
+
+    /**
+     * A reusable off-heap frame buffer and the image that displays it.
+     */
+    private record Slot(PixelBuffer<ByteBuffer> pixels, WritableImage image) {
+    }
+
+    /**
+     * A composed frame waiting in a slot to be displayed.
+     */
+    private record Frame(Slot slot, int index, long delayNanos, int generation) {
+    }
+
+    private final Path path;
+    private final ImageView view;
+    private final Runnable onError;
+
+    private final List<Slot> slots = new ArrayList<>();
+    private BlockingQueue<Slot> free;
+    private final BlockingQueue<Frame> ready = new ArrayBlockingQueue<>(RING_FRAMES);
+
+    // Incremented on every seek; frames composed before the seek are discarded when they reach the display.
+    private final AtomicInteger generation = new AtomicInteger();
+    private final AtomicInteger seekTarget = new AtomicInteger(-1);
+
+    private Thread decoderThread;
+    private final AnimationTimer timer;
+    private Frame showing;
+    private Slot retired; // Shown before the current frame; reusable once the next frame replaces the current one.
+    private final List<Slot> pinned = new ArrayList<>(); // One entry per pin; see pinShown().
+    private final List<Slot> held = new ArrayList<>(); // Taken off screen while pinned; reusable once unpinned.
+    private long nextDue;
+    private boolean paused;
+    private int requestedFrame = -1; // Target of the last step, until the frame it seeks to is shown.
+    private volatile int frameCount = -1; // Known once the decoder has reached the end of the animation.
+
+    private volatile boolean stopped;
+    private volatile boolean decoderDone;
+
+    /**
+     * Constructs an AnimationPlayer.
+     *
+     * @param path    The animated image file.
+     * @param view    The ImageView to show frames in.
+     * @param onError Called on the JavaFX Application Thread if the file cannot be decoded as an animation.
+     */
+    public AnimationPlayer(Path path, ImageView view, Runnable onError) {
+        this.path = path;
+        this.view = view;
+        this.onError = onError;
+        this.timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                showDueFrame(now);
+            }
+        };
+    }
+
+    /**
+     * Starts decoding and playback. Must be called on the JavaFX Application Thread.
+     */
+    public void start() {
+        decoderThread = new Thread(this::decodeLoop, "animation-decoder");
+        decoderThread.setDaemon(true);
+        decoderThread.start();
+        timer.start();
+    }
+
+    /**
+     * Stops playback and decoding, and returns the frame buffers to the pool once they can no longer be rendered.
+     * The ImageView must already show something else. Must be called on the JavaFX Application Thread.
+     */
+    public void stop() {
+        if (stopped) {
+            return;
+        }
+        timer.stop();
+        // The decoder is not interrupted: interrupting a read from an archive would close the archive's channel.
+        // It notices the flag between frames and while waiting for a free slot.
+        stopped = true;
+        // The frames shown and retired last may still be rendered for the pulse in progress, so the buffers are
+        // released two pulses later, and not before the decoder has stopped writing to them.
+        AnimationTimer releaser = new AnimationTimer() {
+            private int pulses;
+
+            @Override
+            public void handle(long now) {
+                if (++pulses >= 2 && decoderDone && pinned.isEmpty()) {
+                    stop();
+                    releaseSlots();
+                }
+            }
+        };
+        releaser.start();
+    }
+
+    /**
+     * Jumps to a frame. The decoder restarts from the nearest known keyframe at or before the target
+     * (a frame that does not depend on earlier ones) and composes forward to it without displaying
+     * the frames in between.
+     *
+     * @param frameIndex The zero-based index of the frame to show next.
+     */
+    public void seek(int frameIndex) {
+        generation.incrementAndGet();
+        seekTarget.set(Math.max(0, frameIndex));
+    }
+
+    /**
+     * Pauses playback on the frame currently shown, or resumes it. Must be called on the JavaFX Application Thread.
+     *
+     * @param paused Whether playback is paused.
+     */
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    /**
+     * Returns whether playback is paused.
+     *
+     * @return true while paused.
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Pauses playback and shows the frame a number of frames after (or before) the one currently shown,
+     * wrapping around at either end of the animation. Must be called on the JavaFX Application Thread.
+     *
+     * @param frames The number of frames to move, negative to step back.
+     */
+    public void step(int frames) {
+        paused = true;
+        // Repeated steps before the seek frame arrives move on from the frame already requested.
+        int from = requestedFrame >= 0 ? requestedFrame : showing == null ? 0 : showing.index();
+        int target = from + frames;
+        int count = frameCount;
+        if (count > 0) {
+            target = Math.floorMod(target, count);
+        } else if (target < 0) {
+            return; // The last frame is not known until the decoder has reached it once.
+        }
+        requestedFrame = target;
+        seek(target);
+    }
+
+    /**
+     * Pins the frame on screen. Until unpinned, its slot is not handed back to the decoder, even after later frames
+     * replace it, and the slots are not returned to the pool. Must be called on the JavaFX Application Thread.
+     *
+     * @return The frame's pixels, or null before the first frame is shown.
+     */
+    ImageDisplayPane.PinnedPixels pinShown() {
+        if (showing == null) {
+            return null;
+        }
+        Slot slot = showing.slot();
+        pinned.add(slot);
+        PixelBuffer<ByteBuffer> pixels = slot.pixels();
+        return new ImageDisplayPane.PinnedPixels(pixels.getWidth(), pixels.getHeight(), pixels.getBuffer(), () -> unpin(slot));
+    }
+
+    private void unpin(Slot slot) {
+        pinned.remove(slot);
+        if (!pinned.contains(slot) && held.remove(slot) && !stopped) {
+            free.offer(slot);
+        }
+    }
+
+    /**
+     * Runs on the JavaFX Application Thread on every pulse and swaps in the next frame once it is due.
+     * Due times advance by each frame's delay from the previous due time, so timing does not drift.
+     */
+    private void showDueFrame(long now) {
+        if (showing != null && (paused ? showing.generation() == generation.get() : now < nextDue)) {
+            return; // Paused frames stay until a step replaces them.
+        }
+        if (view.getScene() == null || view.getScene().getWindow() instanceof Stage stage && stage.isIconified()) {
+            return; // Not visible: hold the current frame, and the decoder pauses once the ring is full.
+        }
+        Frame frame = ready.poll();
+        while (frame != null && frame.generation() != generation.get()) {
+            free.offer(frame.slot()); // Composed before a seek.
+            frame = ready.poll();
+        }
+        if (frame == null) {
+            return;
+        }
+        frame.slot().pixels().updateBuffer(pb -> null); // The decoder rewrote the whole buffer.
+        view.setImage(frame.slot().image());
+        // The frame taken off screen may still be rendered for the pulse in progress; it is reused one frame later.
+        if (retired != null) {
+            if (pinned.contains(retired)) {
+                held.add(retired);
+            } else {
+                free.offer(retired);
+            }
+        }
+        retired = showing == null ? null : showing.slot();
+        // Stay on schedule, unless playback fell behind by more than a frame (e.g. after a stall or a seek).
+        long base = showing == null || now - nextDue > frame.delayNanos() ? now : nextDue;
+        nextDue = base + frame.delayNanos();
+        showing = frame;
+        requestedFrame = -1; // Frames of earlier generations were discarded above, so this is the frame last requested.
+    }
+
+    /**
+     * Decodes and composes frames into free slots until stopped. Runs on the decoder thread.
+     */
+    private void decodeLoop() {
+        // Files inside archives are streamed; the entry stream must be closed separately from the image stream.
+        boolean onDefaultFileSystem = path.getFileSystem() == FileSystems.getDefault();
+        try (InputStream entry = onDefaultFileSystem ? null : Files.newInputStream(path);
+             ImageInputStream stream = openStream(entry)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported animation format: " + path.getFileName());
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, false, false);
+                play(reader);
+            } finally {
+                reader.dispose();
+            }
+        } catch (InterruptedException e) {
+            // Stopped.
+        } catch (Exception e) {
+            if (!stopped) {
+                System.err.println("Error playing animation: " + path + " - " + e.getMessage());
+                Platform.runLater(onError);
+            }
+        } finally {
+            decoderDone = true;
+        }
+    }
+
+    private void play(ImageReader reader) throws IOException, InterruptedException {
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        Node screen = metadataNode(reader.getStreamMetadata(), "javax_imageio_gif_stream_1.0", "LogicalScreenDescriptor");
+        if (screen != null) {
+            width = Math.max(width, intAttribute(screen, "logicalScreenWidth", width));
+            height = Math.max(height, intAttribute(screen, "logicalScreenHeight", height));
+        }
+        allocateSlots(width, height);
+
+        int[] canvas = new int[width * height];
+        int[] saved = null; // Canvas region saved for "restore to previous" disposal.
+        int[] row = new int[width];
+        TreeSet<Integer> keyframes = new TreeSet<>();
+        int index = 0;
+        int skipUntil = 0;
+        int frameGeneration = generation.get();
+        FrameInfo previous = null;
+
+        while (true) {
+            int target = seekTarget.getAndSet(-1);
+            if (target >= 0) {
+                frameGeneration = generation.get();
+                if (frameCount > 0) {
+                    target %= frameCount;
+                }
+                Integer keyframe = keyframes.floor(target);
+                index = keyframe == null ? 0 : keyframe;
+                skipUntil = target;
+                previous = null;
+                Arrays.fill(canvas, 0);
+            }
+
+            BufferedImage image;
+            try {
+                image = reader.read(index);
+            } catch (IndexOutOfBoundsException e) {
+                if (index == 0) {
+                    throw new IOException("No frames in " + path.getFileName());
+                }
+                frameCount = index; // Reached the end: loop back to the first frame.
+                index = 0;
+                previous = null;
+                Arrays.fill(canvas, 0);
+                continue;
+            }
+            FrameInfo info = frameInfo(reader, index, image, width, height);
+
+            // Apply the previous frame's disposal before drawing this one.
+            if (previous != null) {
+                if (previous.disposal() == 2) {
+                    fillRect(canvas, width, previous, 0);
+                } else if (previous.disposal() == 3 && saved != null) {
+                    copyRect(saved, canvas, width, previous);
+                }
+            }
+            if (index == 0 || info.coversCanvas(width, height) && !info.transparent()
+                    || previous != null && previous.disposal() == 2 && previous.coversCanvas(width, height)) {
+                keyframes.add(index);
+            }
+            if (info.disposal() == 3) {
+                if (saved == null) {
+                    saved = new int[canvas.length];
+                }
+                copyRect(canvas, saved, width, info);
+            }
+            drawFrame(image, info, canvas, width, height, row);
+            previous = info;
+
+            if (index >= skipUntil) {
+                // Wait while the ring is full: decoding pauses with playback.
+                Slot slot = null;
+                while (slot == null && !stopped && seekTarget.get() < 0) {
+                    slot = free.poll(SLOT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (slot == null) {
+                    if (stopped) {
+                        return;
+                    }
+                    continue; // A seek arrived while waiting.
+                }
+                writeBgraPre(canvas, slot.pixels().getBuffer());
+                ready.put(new Frame(slot, index, info.delayNanos(), frameGeneration));
+                skipUntil = 0;
+            }
+            index++;
+            if (frameCount == 1 || stopped) {
+                return; // A still image has nothing more to decode; a stopped player decodes nothing more.
+            }
+        }
+    }
+
+    /**
+     * Creates the ring of frame buffers, as many as the configured frame count and byte limit allow (at least three:
+     * the frame shown, the frame shown before it, and one for the decoder to compose into).
+     */
+    private void allocateSlots(int width, int height) {
+        int frameBytes = width * height * 4;
+        int count = (int) Math.max(3, Math.min(RING_FRAMES, MAX_RING_BYTES / Math.max(1, frameBytes)));
+        free = new ArrayBlockingQueue<>(count);
+        for (int i = 0; i < count; i++) {
+            ByteBuffer buffer = PixelBufferPool.shared().acquire(frameBytes);
+            PixelBuffer<ByteBuffer> pixels = new PixelBuffer<>(width, height, buffer, PixelFormat.getByteBgraPreInstance());
+            Slot slot = new Slot(pixels, new WritableImage(pixels));
+            slots.add(slot);
+            free.add(slot);
+        }
+    }
+
+    /**
+     * Returns the buffers to the pool. Runs on the JavaFX Application Thread once the player is stopped, the
+     * decoder has exited and two pulses have passed. The slot list is only written by the decoder, which
+     * published it by setting {@code decoderDone}.
+     */
+    private void releaseSlots() {
+        for (Slot slot : slots) {
+            PixelBufferPool.shared().release(slot.pixels().getBuffer());
+        }
+        slots.clear();
+    }
+
+    /**
+     * Opens the file for random access when it is on the default file system, so frames can be re-read
+     * without caching the whole stream; otherwise wraps the given archive entry stream.
+     */
+    private ImageInputStream openStream(InputStream entry) throws IOException {
+        ImageInputStream stream = entry == null
+                ? ImageIO.createImageInputStream(path.toFile())
+                : ImageIO.createImageInputStream(entry);
+        if (stream == null) {
+            throw new IOException("Cannot open " + path.getFileName());
+        }
+        return stream;
+    }
+
+    /**
+     * Position, disposal and timing of one frame.
+     */
+    private record FrameInfo(int left, int top, int width, int height, int disposal, boolean transparent, long delayNanos) {
+        boolean coversCanvas(int canvasWidth, int canvasHeight) {
+            return left == 0 && top == 0 && width >= canvasWidth && height >= canvasHeight;
+        }
+    }
+
+    private static FrameInfo frameInfo(ImageReader reader, int index, BufferedImage image, int canvasWidth, int canvasHeight)
+            throws IOException {
+        IIOMetadata metadata = reader.getImageMetadata(index);
+        Node descriptor = metadataNode(metadata, GIF_METADATA_FORMAT, "ImageDescriptor");
+        Node control = metadataNode(metadata, GIF_METADATA_FORMAT, "GraphicControlExtension");
+        int left = descriptor == null ? 0 : intAttribute(descriptor, "imageLeftPosition", 0);
+        int top = descriptor == null ? 0 : intAttribute(descriptor, "imageTopPosition", 0);
+        int disposal = 0;
+        boolean transparent = image.getColorModel().hasAlpha();
+        long delay = DEFAULT_DELAY_NANOS;
+        if (control != null) {
+            disposal = switch (stringAttribute(control, "disposalMethod")) {
+                case "restoreToBackgroundColor" -> 2;
+                case "restoreToPrevious" -> 3;
+                default -> 1;
+            };
+            transparent = "TRUE".equalsIgnoreCase(stringAttribute(control, "transparentColorFlag"));
+            int hundredths = intAttribute(control, "delayTime", 0);
+            if (hundredths > 1) {
+                delay = TimeUnit.MILLISECONDS.toNanos(hundredths * 10L);
+            }
+        }
+        int width = Math.min(image.getWidth(), canvasWidth - left);
+        int height = Math.min(image.getHeight(), canvasHeight - top);
+        return new FrameInfo(left, top, Math.max(0, width), Math.max(0, height), disposal, transparent, delay);
+    }
+
+    /**
+     * Draws a frame onto the canvas; fully transparent pixels leave the canvas unchanged.
+     */
+    private static void drawFrame(BufferedImage image, FrameInfo info, int[] canvas, int canvasWidth, int canvasHeight, int[] row) {
+        for (int y = 0; y < info.height() && info.top() + y < canvasHeight; y++) {
+            image.getRGB(0, y, info.width(), 1, row, 0, info.width());
+            int offset = (info.top() + y) * canvasWidth + info.left();
+            for (int x = 0; x < info.width(); x++) {
+                int p = row[x];
+                if ((p >>> 24) != 0) {
+                    canvas[offset + x] = p;
+                }
+            }
+        }
+    }
+
+    private static void fillRect(int[] canvas, int canvasWidth, FrameInfo rect, int value) {
+        for (int y = 0; y < rect.height(); y++) {
+            int offset = (rect.top() + y) * canvasWidth + rect.left();
+            Arrays.fill(canvas, offset, offset + rect.width(), value);
+        }
+    }
+
+    private static void copyRect(int[] from, int[] to, int canvasWidth, FrameInfo rect) {
+        for (int y = 0; y < rect.height(); y++) {
+            int offset = (rect.top() + y) * canvasWidth + rect.left();
+            System.arraycopy(from, offset, to, offset, rect.width());
+        }
+    }
+
+    /**
+     * Copies the ARGB canvas into a frame buffer as premultiplied BGRA.
+     */
+    private static void writeBgraPre(int[] canvas, ByteBuffer buffer) {
+        for (int i = 0, out = 0; i < canvas.length; i++, out += 4) {
+            int p = canvas[i];
+            int a = p >>> 24;
+            int r = (p >> 16) & 0xFF;
+            int g = (p >> 8) & 0xFF;
+            int b = p & 0xFF;
+            if (a != 0xFF) {
+                r = (r * a + 127) / 255;
+                g = (g * a + 127) / 255;
+                b = (b * a + 127) / 255;
+            }
+            buffer.put(out, (byte) b).put(out + 1, (byte) g).put(out + 2, (byte) r).put(out + 3, (byte) a);
+        }
+    }
+
+    private static Node metadataNode(IIOMetadata metadata, String format, String name) {
+        if (metadata == null || !Arrays.asList(metadata.getMetadataFormatNames()).contains(format)) {
+            return null;
+        }
+        for (Node n = metadata.getAsTree(format).getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeName().equals(name)) {
+                return n;
+            }
+        }
+        return null;
+    }
+
+    private static String stringAttribute(Node node, String name) {
+        NamedNodeMap attributes = node.getAttributes();
+        Node attribute = attributes == null ? null : attributes.getNamedItem(name);
+        return attribute == null ? "" : attribute.getNodeValue();
+    }
+
+    private static int intAttribute(Node node, String name, int fallback) {
+        try {
+            return Integer.parseInt(stringAttribute(node, name));
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
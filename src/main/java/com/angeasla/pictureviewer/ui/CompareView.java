@@ -0,0 +1,131 @@
+package com.angeasla.pictureviewer.ui;
+
+import com.angeasla.pictureviewer.model.DecodedImageCache;
+import javafx.scene.control.Label;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.layout.ColumnConstraints;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.RowConstraints;
+import javafx.scene.layout.VBox;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows two to four images side by side, e.g. to pick the best shot of a burst.
+ * <p>
+ * The images are laid out in a grid of up to two columns. All panes share one {@link ViewTransform}, so zooming
+ * or dragging in one pane zooms or pans all of them to the same detail. Images come from a shared
+ * {@link DecodedImageCache}: each pane shows the image's screen-sized preview, sharpened with high-resolution
+ * tiles of the visible region when zoomed in. Stored edits are not applied, so the originals are compared.
+ */
+public class CompareView {
+
+    /** The largest number of images compared at once. */
+    public static final int MAX_IMAGES = 4;
+
+    private final GridPane grid = new GridPane();
+    private final ViewTransform transform = new ViewTransform();
+    private final DecodedImageCache cache;
+    // The panes are created once and reused, as they stay registered with the shared transform.
+    private final List<ImageDisplayPane> panes = new ArrayList<>();
+    private final List<TileLayer> tileLayers = new ArrayList<>();
+    private final List<VBox> cells = new ArrayList<>();
+    private final List<Label> labels = new ArrayList<>();
+    private final List<DecodedImageCache.Request> previews = new ArrayList<>();
+
+    /**
+     * Constructs a CompareView.
+     *
+     * @param cache The cache the panes take their images from.
+     */
+    public CompareView(DecodedImageCache cache) {
+        this.cache = cache;
+        for (int i = 0; i < MAX_IMAGES; i++) {
+            ImageDisplayPane pane = new ImageDisplayPane(transform);
+            ScrollPane scrollPane = pane.getImageScrollPane();
+            scrollPane.setPrefSize(100, 100); // The grid, not the image, decides the size.
+            Label label = new Label();
+            label.setId("compareLabel");
+            label.setMaxWidth(Double.MAX_VALUE);
+            VBox cell = new VBox(4, label, scrollPane); // 4px spacing.
+            VBox.setVgrow(scrollPane, Priority.ALWAYS);
+            GridPane.setHgrow(cell, Priority.ALWAYS);
+            GridPane.setVgrow(cell, Priority.ALWAYS);
+            panes.add(pane);
+            tileLayers.add(new TileLayer(pane, cache));
+            labels.add(label);
+            cells.add(cell);
+        }
+        grid.setHgap(8);
+        grid.setVgap(8);
+    }
+
+    /**
+     * Returns the layout holding the panes, ready to be added to a scene.
+     * @return The grid of panes.
+     */
+    public Region getPane() {
+        return grid;
+    }
+
+    /**
+     * Shows images side by side, zoomed out to fit. Images beyond {@link #MAX_IMAGES} are left out.
+     * Must be called on the JavaFX Application Thread.
+     *
+     * @param paths The image files to compare.
+     */
+    public void show(List<Path> paths) {
+        close();
+        transform.reset();
+        int count = Math.min(paths.size(), MAX_IMAGES);
+        int columns = Math.min(count, 2);
+        int rows = (count + columns - 1) / columns;
+        for (int i = 0; i < columns; i++) {
+            ColumnConstraints column = new ColumnConstraints();
+            column.setPercentWidth(100.0 / columns);
+            grid.getColumnConstraints().add(column);
+        }
+        for (int i = 0; i < rows; i++) {
+            RowConstraints row = new RowConstraints();
+            row.setPercentHeight(100.0 / rows);
+            grid.getRowConstraints().add(row);
+        }
+
+        for (int i = 0; i < count; i++) {
+            Path path = paths.get(i);
+            ImageDisplayPane pane = panes.get(i);
+            TileLayer tileLayer = tileLayers.get(i);
+            Label label = labels.get(i);
+            label.setText((i + 1) + ". " + path.getFileName());
+            grid.add(cells.get(i), i % columns, i / columns);
+            previews.add(cache.preview(path, preview -> {
+                if (preview == null) {
+                    label.setText(label.getText() + " (cannot be displayed)");
+                    return;
+                }
+                pane.displayImage(preview.image());
+                tileLayer.show(path, preview);
+            }));
+        }
+    }
+
+    /**
+     * Removes the images, cancelling the decodes still pending, so that their memory can be reclaimed.
+     * Must be called on the JavaFX Application Thread.
+     */
+    public void close() {
+        previews.forEach(DecodedImageCache.Request::cancel);
+        previews.clear();
+        for (int i = 0; i < MAX_IMAGES; i++) {
+            tileLayers.get(i).clear();
+            panes.get(i).displayImage(null);
+        }
+        grid.getChildren().clear();
+        grid.getColumnConstraints().clear();
+        grid.getRowConstraints().clear();
+    }
+}
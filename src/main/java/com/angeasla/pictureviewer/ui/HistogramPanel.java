@@ -0,0 +1,197 @@
+package com.angeasla.pictureviewer.ui;
+
+import com.angeasla.pictureviewer.util.ImageStatistics;
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Label;
+import javafx.scene.effect.BlendMode;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A panel showing the histograms and statistics of the displayed image: red, green and blue histograms
+ * (added together, so overlaps appear lighter), the luminance histogram as an outline, mean and standard
+ * deviation per channel, and the share of clipped pixels.
+ * <p>
+ * Statistics are computed off the FX thread whenever the displayed image changes, including in-place updates
+ * such as adjustment previews. While one computation runs, further changes are coalesced into a single rerun,
+ * so flipping quickly through images never queues up work. Nothing is computed while the panel is hidden.
+ * Pixels in pooled or animation buffers, which may be overwritten or reused at any time, are copied on the FX thread
+ * first, so the computation always reads one consistent image.
+ */
+public class HistogramPanel {
+
+    private static final double WIDTH = 284;
+    private static final double HEIGHT = 100;
+
+    private final ImageDisplayPane imageDisplayPane;
+    private final Canvas canvas = new Canvas(WIDTH, HEIGHT);
+    private final Label statsLabel = new Label();
+    private final VBox pane;
+
+    private boolean computing; // A computation is running.
+    private boolean pending; // The image changed while computing; compute again when done.
+    private Image waitingFor; // A background-loading image whose completion is awaited.
+
+    // Recomputes once a background-loading image has finished loading.
+    private final ChangeListener<Number> loadListener = (obs, oldVal, progress) -> {
+        if (progress.doubleValue() >= 1) {
+            stopWaiting();
+            refresh();
+        }
+    };
+
+    /**
+     * Constructs a HistogramPanel for the image shown in an ImageDisplayPane. The panel starts hidden.
+     *
+     * @param imageDisplayPane The pane whose image is analysed.
+     */
+    public HistogramPanel(ImageDisplayPane imageDisplayPane) {
+        this.imageDisplayPane = imageDisplayPane;
+        statsLabel.setId("histogramStats"); // ID for CSS styling.
+        pane = new VBox(4, canvas, statsLabel); // 4px spacing.
+        pane.setId("histogramPanel");
+        pane.managedProperty().bind(pane.visibleProperty()); // Take no space in the sidebar while hidden.
+        pane.setVisible(false);
+
+        imageDisplayPane.contentVersionProperty().addListener((obs, oldVal, newVal) -> refresh());
+        imageDisplayPane.getImageView().imageProperty().addListener((obs, oldVal, newVal) -> refresh());
+        pane.visibleProperty().addListener((obs, oldVal, visible) -> refresh());
+        clear();
+    }
+
+    /**
+     * Returns the panel's layout node, ready to be added to a layout.
+     * @return The VBox containing the histogram and statistics.
+     */
+    public VBox getPane() {
+        return pane;
+    }
+
+    /**
+     * Shows the panel if it is hidden, and hides it otherwise.
+     */
+    public void toggle() {
+        pane.setVisible(!pane.isVisible());
+    }
+
+    /**
+     * Starts computing the statistics of the displayed image, or marks them for recomputation if busy.
+     */
+    private void refresh() {
+        if (!pane.isVisible()) {
+            return;
+        }
+        if (computing) {
+            pending = true;
+            return;
+        }
+        stopWaiting();
+        Image image = imageDisplayPane.getImageView().getImage();
+        if (image == null || image.isError()) {
+            clear();
+            return;
+        }
+        if (image.getProgress() < 1) {
+            waitingFor = image; // Still loading in the background (the fallback loader); try again when done.
+            image.progressProperty().addListener(loadListener);
+            return;
+        }
+
+        // Pooled and animation frames are reused once replaced; pin the buffer instead of copying it here.
+        ImageDisplayPane.PinnedPixels pin = imageDisplayPane.pinDisplayedPixels();
+        Image source = pin == null ? image : new WritableImage(
+                new PixelBuffer<>(pin.width(), pin.height(), pin.pixels().duplicate(), PixelFormat.getByteBgraPreInstance()));
+        computing = true;
+        CompletableFuture.supplyAsync(() -> ImageStatistics.compute(source))
+                .whenComplete((stats, error) -> Platform.runLater(() -> {
+                    computing = false;
+                    if (pin != null) {
+                        pin.unpin().run();
+                    }
+                    if (error != null) {
+                        System.err.println("Error computing image statistics: " + error.getMessage());
+                    } else {
+                        draw(stats); // Even if already stale, this is closer than what is shown.
+                    }
+                    if (pending) {
+                        pending = false;
+                        refresh();
+                    }
+                }));
+    }
+
+    private void stopWaiting() {
+        if (waitingFor != null) {
+            waitingFor.progressProperty().removeListener(loadListener);
+            waitingFor = null;
+        }
+    }
+
+    private void clear() {
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.setFill(Color.BLACK);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        statsLabel.setText("No image");
+    }
+
+    private void draw(ImageStatistics stats) {
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.setGlobalBlendMode(BlendMode.SRC_OVER);
+        g.setFill(Color.BLACK);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+
+        // Scale to the tallest inner bin, so a spike of clipped pixels at 0 or 255 does not flatten the rest.
+        long tallest = 1;
+        for (int c = 0; c < 4; c++) {
+            for (int level = 1; level < 255; level++) {
+                tallest = Math.max(tallest, stats.histogram(c)[level]);
+            }
+        }
+        double binWidth = WIDTH / 256;
+
+        g.setGlobalBlendMode(BlendMode.ADD);
+        Color[] colors = {Color.rgb(200, 0, 0), Color.rgb(0, 200, 0), Color.rgb(0, 0, 200)};
+        for (int c = ImageStatistics.RED; c <= ImageStatistics.BLUE; c++) {
+            g.setFill(colors[c]);
+            long[] histogram = stats.histogram(c);
+            for (int level = 0; level < 256; level++) {
+                double h = Math.min(HEIGHT, HEIGHT * histogram[level] / tallest);
+                g.fillRect(level * binWidth, HEIGHT - h, Math.ceil(binWidth), h);
+            }
+        }
+
+        g.setGlobalBlendMode(BlendMode.SRC_OVER);
+        g.setStroke(Color.LIGHTGRAY);
+        g.setLineWidth(1);
+        g.beginPath();
+        long[] luma = stats.histogram(ImageStatistics.LUMA);
+        for (int level = 0; level < 256; level++) {
+            double y = HEIGHT - Math.min(HEIGHT, HEIGHT * luma[level] / tallest);
+            if (level == 0) {
+                g.moveTo(0, y);
+            } else {
+                g.lineTo((level + 0.5) * binWidth, y);
+            }
+        }
+        g.stroke();
+
+        statsLabel.setText(String.format(Locale.ROOT,
+                "R %5.1f ±%4.1f  G %5.1f ±%4.1f%nB %5.1f ±%4.1f  L %5.1f ±%4.1f%nClipped %.2f%% dark, %.2f%% bright%n%.1f MP in %.0f ms%s",
+                stats.mean(ImageStatistics.RED), stats.standardDeviation(ImageStatistics.RED),
+                stats.mean(ImageStatistics.GREEN), stats.standardDeviation(ImageStatistics.GREEN),
+                stats.mean(ImageStatistics.BLUE), stats.standardDeviation(ImageStatistics.BLUE),
+                stats.mean(ImageStatistics.LUMA), stats.standardDeviation(ImageStatistics.LUMA),
+                stats.clippedShadowsPercent(), stats.clippedHighlightsPercent(),
+                stats.getPixels() / 1e6, stats.getElapsedMillis(), ImageStatistics.isVectorized() ? " (vector)" : ""));
+    }
+}
@@ -1,72 +1,118 @@
 package com.angeasla.pictureviewer.ui;
 
+import com.angeasla.pictureviewer.util.PixelBufferPool;
+import com.angeasla.pictureviewer.util.PooledImageDecoder.DecodedFrame;
+import javafx.animation.AnimationTimer;
+import javafx.beans.property.ReadOnlyLongProperty;
+import javafx.beans.property.ReadOnlyLongWrapper;
 import javafx.geometry.Bounds;
 import javafx.scene.Cursor;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.Pane;
 import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
 
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Encapsulates the image display area, including the ImageView, ScrollPane,
  * and logic for zooming and panning.
+ * <p>
+ * Zoom and pan are kept in a {@link ViewTransform}. Each pane normally has its own, but the panes of the
+ * compare view share one, so zooming or dragging in any of them moves all of them.
  */
 public class ImageDisplayPane {
 
     private final ImageView imageView;
     private final ScrollPane imageScrollPane;
     private final StackPane centerPane;
+    private final Pane overlay; // Drawn over the image, e.g. high-resolution tiles in the compare view.
+
+    private final ViewTransform transform; // Zoom and pan, possibly shared with other panes.
+    private final boolean sharedTransform; // Whether the transform belongs to a group of panes.
 
     private double initialX; // For panning
     private double initialY; // For panning
 
+    // Off-heap pixel buffer backing the displayed image, when it was decoded into the pixel buffer pool.
+    private PixelBuffer<ByteBuffer> pixelBuffer;
+    // Buffers taken off screen, with the pulse count when they were. The render thread may still be drawing the
+    // last pulse from one, so it only goes back to the pool two pulses later, when that drawing has finished.
+    private final List<Retired> retired = new ArrayList<>();
+    private long pulses;
+    private final AnimationTimer retiredReleaser = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            releaseRetired();
+        }
+    };
+    // Pin counts of buffers read off the FX thread. A pinned buffer is neither overwritten nor returned to the pool.
+    private final Map<ByteBuffer, Integer> pins = new IdentityHashMap<>();
+    // Player for the displayed animation, if the displayed image is animated.
+    private AnimationPlayer animationPlayer;
+    // Incremented whenever the displayed pixels change, including updates in place that keep the same Image.
+    private final ReadOnlyLongWrapper contentVersion = new ReadOnlyLongWrapper();
+
     /**
-     * Constructs an ImageDisplayPane.
+     * Constructs an ImageDisplayPane with its own zoom and pan.
      *
      * @param stage The primary stage of the application, used for binding image view dimensions.
      */
     public ImageDisplayPane(Stage stage) {
+        this(new ViewTransform(), false, stage);
+    }
+
+    /**
+     * Constructs an ImageDisplayPane that zooms and pans together with the other panes sharing the same transform.
+     * The image is fitted to the pane's own viewport. Showing a new image does not reset the shared transform;
+     * that is left to the owner of the group.
+     *
+     * @param transform The zoom and pan shared by the group of panes.
+     */
+    public ImageDisplayPane(ViewTransform transform) {
+        this(transform, true, null);
+    }
+
+    private ImageDisplayPane(ViewTransform transform, boolean sharedTransform, Stage stage) {
+        this.transform = transform;
+        this.sharedTransform = sharedTransform;
         this.imageView = new ImageView();
         this.imageView.setPreserveRatio(true);
-        // Bind image view dimensions to stage dimensions, with offsets for UI elements.
-        // These offsets (360 and 150) are specific to the current layout.
-        this.imageView.fitWidthProperty().bind(stage.widthProperty().subtract(360));
-        this.imageView.fitHeightProperty().bind(stage.heightProperty().subtract(150));
+        if (stage != null) {
+            // Bind image view dimensions to stage dimensions, with offsets for UI elements.
+            // These offsets (360 and 150) are specific to the current layout.
+            this.imageView.fitWidthProperty().bind(stage.widthProperty().subtract(360));
+            this.imageView.fitHeightProperty().bind(stage.heightProperty().subtract(150));
+        }
 
         // Implement Zoom functionality with mouse scroll wheel.
         this.imageView.setOnScroll(event -> {
             double zoomFactor = 1.05;
-            double deltaY = event.getDeltaY();
-
-            final double MAX_ZOOM_SCALE = 10.0;
-            final double MIN_ZOOM_SCALE = 0.4;
-
-            if (deltaY > 0) { // Zoom in
-                double newScaleX = imageView.getScaleX() * zoomFactor;
-                double newScaleY = imageView.getScaleY() * zoomFactor;
-
-                if (newScaleX <= MAX_ZOOM_SCALE) {
-                    imageView.setScaleX(newScaleX);
-                    imageView.setScaleY(newScaleY);
-                } else {
-                    imageView.setScaleX(MAX_ZOOM_SCALE);
-                    imageView.setScaleY(MAX_ZOOM_SCALE);
-                }
+            if (event.getDeltaY() > 0) { // Zoom in
+                transform.setZoom(transform.getZoom() * zoomFactor);
             } else { // Zoom out
-                if (imageView.getScaleX() / zoomFactor >= MIN_ZOOM_SCALE) {
-                    imageView.setScaleX(imageView.getScaleX() / zoomFactor);
-                    imageView.setScaleY(imageView.getScaleY() / zoomFactor);
-                } else {
-                    imageView.setScaleX(MIN_ZOOM_SCALE);
-                    imageView.setScaleY(MIN_ZOOM_SCALE);
-                }
+                transform.setZoom(transform.getZoom() / zoomFactor);
             }
             applyPanningBounds(); // Adjust panning bounds after zoom
             event.consume();
         });
 
-        this.centerPane = new StackPane(imageView);
+        this.overlay = new Pane();
+        this.overlay.setMouseTransparent(true);
+        this.overlay.setMinSize(0, 0);
+        this.overlay.setPrefSize(0, 0); // Fills the pane without adding to its preferred size.
+        this.centerPane = new StackPane(imageView, overlay);
 
         // Implement Panning (image dragging) functionality with primary mouse button.
         this.centerPane.setOnMousePressed(event -> {
@@ -82,8 +128,13 @@ public class ImageDisplayPane {
                 double deltaX = event.getX() - initialX;
                 double deltaY = event.getY() - initialY;
 
-                imageView.setTranslateX(imageView.getTranslateX() + deltaX);
-                imageView.setTranslateY(imageView.getTranslateY() + deltaY);
+                // Move the center point by the dragged distance, measured in fractions of the displayed image.
+                Bounds imageViewBounds = imageView.getBoundsInLocal();
+                if (imageViewBounds.getWidth() > 0 && imageViewBounds.getHeight() > 0) {
+                    double zoom = transform.getZoom();
+                    transform.setCenter(transform.getCenterX() - deltaX / (imageViewBounds.getWidth() * zoom),
+                            transform.getCenterY() - deltaY / (imageViewBounds.getHeight() * zoom));
+                }
 
                 applyPanningBounds(); // Keep image within scroll pane bounds after panning
 
@@ -99,6 +150,20 @@ public class ImageDisplayPane {
         this.imageScrollPane = new ScrollPane(centerPane);
         this.imageScrollPane.setFitToWidth(true);
         this.imageScrollPane.setFitToHeight(true);
+        if (stage == null) {
+            // Fit the image to the viewport; panning is done by dragging, so scroll bars would only take up room.
+            this.imageScrollPane.setHbarPolicy(ScrollPane.ScrollBarPolicy.NEVER);
+            this.imageScrollPane.setVbarPolicy(ScrollPane.ScrollBarPolicy.NEVER);
+            this.imageScrollPane.viewportBoundsProperty().addListener((obs, oldVal, newVal) -> {
+                imageView.setFitWidth(newVal.getWidth());
+                imageView.setFitHeight(newVal.getHeight());
+            });
+        }
+
+        // Follow the transform, whichever pane changed it, and keep following it as the image or viewport resizes.
+        transform.addListener(obs -> applyTransform());
+        this.imageView.boundsInLocalProperty().addListener((obs, oldVal, newVal) -> applyTransform());
+        this.imageScrollPane.viewportBoundsProperty().addListener((obs, oldVal, newVal) -> applyTransform());
     }
 
     /**
@@ -117,58 +182,290 @@ public class ImageDisplayPane {
         return imageView;
     }
 
+    /**
+     * Returns a layer drawn over the image, covering the whole pane, for content that follows the displayed image.
+     * Nodes in it are positioned in the same coordinates as the ImageView's bounds in its parent.
+     * @return The overlay pane; it does not receive mouse events.
+     */
+    public Pane getOverlay() {
+        return overlay;
+    }
+
+    /**
+     * Returns the zoom and pan of this pane, which may be shared with other panes.
+     * @return The transform.
+     */
+    public ViewTransform getTransform() {
+        return transform;
+    }
+
+    /**
+     * Returns a counter that changes whenever the displayed pixels change.
+     * Unlike the ImageView's image property, it also changes when a frame is updated in place.
+     * Frames of a playing animation are not counted.
+     * @return A read-only property incremented on every change of the displayed image.
+     */
+    public ReadOnlyLongProperty contentVersionProperty() {
+        return contentVersion.getReadOnlyProperty();
+    }
+
     /**
      * Loads and displays a new image, resetting zoom and pan.
      * @param image The Image object to display.
      */
     public void displayImage(Image image) {
-        // Reset zoom and pan when a new image is selected.
-        imageView.setScaleX(1.0);
-        imageView.setScaleY(1.0);
-        imageView.setTranslateX(0.0);
-        imageView.setTranslateY(0.0);
+        resetView();
         imageView.setImage(image);
+        stopAnimation();
+        releasePixelBuffer();
+        contentVersion.set(contentVersion.get() + 1);
     }
 
     /**
-     * Adjusts the ImageView's translation to keep it within the bounds of the ScrollPane
-     * during panning and zooming, preventing it from going completely off-screen.
+     * Plays an animated image by streaming its frames, resetting zoom and pan.
+     * Only a small ring of frames is kept decoded; playback and decoding stop when another image is displayed.
+     *
+     * @param path    The animated image file.
+     * @param onError Called if the file cannot be played, e.g. to fall back to another loader.
      */
-    private void applyPanningBounds() {
-        Bounds imageViewBounds = imageView.getBoundsInLocal();
-        double scaledImageWidth = imageViewBounds.getWidth() * imageView.getScaleX();
-        double scaledImageHeight = imageViewBounds.getHeight() * imageView.getScaleY();
+    public void playAnimation(Path path, Runnable onError) {
+        resetView();
+        imageView.setImage(null);
+        stopAnimation();
+        releasePixelBuffer();
+        animationPlayer = new AnimationPlayer(path, imageView, onError);
+        animationPlayer.start();
+        contentVersion.set(contentVersion.get() + 1);
+    }
 
-        if (imageScrollPane == null) {
-            return; // Should not happen after constructor, but as a safeguard.
+    /**
+     * Displayed pixels held unchanged so they can be read off the FX thread.
+     *
+     * @param width  The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     * @param pixels The premultiplied BGRA pixels; read through a duplicate, never written.
+     * @param unpin  Lets the buffer be overwritten and reused again. Must be run once, on the JavaFX Application Thread.
+     */
+    public record PinnedPixels(int width, int height, ByteBuffer pixels, Runnable unpin) {
+    }
+
+    /**
+     * Pins the displayed pixels if they are in a buffer that is overwritten in place or reused once another image
+     * is shown, i.e. a pooled frame or an animation frame. Until unpinned, the buffer is neither updated in place
+     * nor handed back for reuse, even after another image replaces it on screen.
+     * Must be called on the JavaFX Application Thread.
+     *
+     * @return The pinned pixels, or null if the displayed image never changes once shown and can be read directly.
+     */
+    public PinnedPixels pinDisplayedPixels() {
+        if (animationPlayer != null) {
+            return animationPlayer.pinShown();
+        }
+        if (pixelBuffer == null) {
+            return null;
         }
+        ByteBuffer buffer = pixelBuffer.getBuffer();
+        pins.merge(buffer, 1, Integer::sum);
+        return new PinnedPixels(pixelBuffer.getWidth(), pixelBuffer.getHeight(), buffer, () -> unpin(buffer));
+    }
 
-        Bounds viewportBounds = imageScrollPane.getViewportBounds();
-        double viewportWidth = viewportBounds.getWidth();
-        double viewportHeight = viewportBounds.getHeight();
+    private void unpin(ByteBuffer buffer) {
+        pins.computeIfPresent(buffer, (b, count) -> count > 1 ? count - 1 : null);
+        if (!retired.isEmpty()) {
+            retiredReleaser.start(); // The buffer may have been retired while pinned.
+        }
+    }
 
-        double newTranslateX = imageView.getTranslateX();
-        double newTranslateY = imageView.getTranslateY();
+    /**
+     * Pauses the playing animation and moves it by a number of frames, wrapping around at either end.
+     *
+     * @param frames The number of frames to move, negative to step back.
+     * @return true if an animation is playing, false if the displayed image is not animated.
+     */
+    public boolean stepAnimation(int frames) {
+        if (animationPlayer == null) {
+            return false;
+        }
+        animationPlayer.step(frames);
+        return true;
+    }
 
-        // Calculate maximum translation allowed to keep image within viewport.
-        double maxTranslateX = (scaledImageWidth - viewportWidth) / 2;
-        double maxTranslateY = (scaledImageHeight - viewportHeight) / 2;
+    /**
+     * Pauses the playing animation, or resumes it if it is paused.
+     *
+     * @return true if an animation is playing, false if the displayed image is not animated.
+     */
+    public boolean toggleAnimationPaused() {
+        if (animationPlayer == null) {
+            return false;
+        }
+        animationPlayer.setPaused(!animationPlayer.isPaused());
+        return true;
+    }
 
-        // Apply horizontal bounds.
-        if (scaledImageWidth > viewportWidth) {
-            newTranslateX = Math.max(-maxTranslateX, Math.min(maxTranslateX, newTranslateX));
-        } else {
-            newTranslateX = 0; // Center image if it's smaller than the viewport.
+    /**
+     * Displays a frame decoded into a pooled off-heap buffer, resetting zoom and pan.
+     * If the frame has the same size as the one currently shown, its pixels are copied into the existing
+     * buffer and the displayed image is updated in place, unless that buffer is pinned; otherwise the frame's
+     * buffer backs a new image.
+     * Either way, the pane takes ownership of the frame's buffer and returns it to the pool when done.
+     * Must be called on the JavaFX Application Thread.
+     *
+     * @param frame The decoded frame to display.
+     */
+    public void displayFrame(DecodedFrame frame) {
+        resetView();
+        showFrame(frame);
+    }
+
+    /**
+     * Displays a frame like {@link #displayFrame(DecodedFrame)}, but keeps the current zoom and pan,
+     * for previews that replace the displayed image many times per second.
+     * Must be called on the JavaFX Application Thread.
+     *
+     * @param frame The frame to display; the pane takes ownership of its buffer.
+     */
+    public void previewFrame(DecodedFrame frame) {
+        showFrame(frame);
+        applyPanningBounds(); // The preview may have a different size after a crop or rotation.
+    }
+
+    private void showFrame(DecodedFrame frame) {
+        if (animationPlayer != null) {
+            imageView.setImage(null);
+            stopAnimation();
+        }
+        if (pixelBuffer != null && pixelBuffer.getWidth() == frame.width() && pixelBuffer.getHeight() == frame.height()
+                && !pins.containsKey(pixelBuffer.getBuffer())) {
+            pixelBuffer.updateBuffer(pb -> {
+                pb.getBuffer().clear().put(frame.pixels().rewind());
+                return null; // The whole image changed.
+            });
+            PixelBufferPool.shared().release(frame.pixels());
+            contentVersion.set(contentVersion.get() + 1);
+            return;
+        }
+
+        PixelBuffer<ByteBuffer> previous = pixelBuffer;
+        pixelBuffer = new PixelBuffer<>(frame.width(), frame.height(), frame.pixels(), PixelFormat.getByteBgraPreInstance());
+        imageView.setImage(new WritableImage(pixelBuffer));
+        if (previous != null) {
+            retire(previous.getBuffer());
+        }
+        contentVersion.set(contentVersion.get() + 1);
+    }
+
+    /**
+     * Resets zoom and pan, as done whenever a new image is shown.
+     * A shared transform is left to its owner, so that one pane loading an image does not move the others.
+     */
+    private void resetView() {
+        if (!sharedTransform) {
+            transform.reset();
+        }
+    }
+
+    /**
+     * Stops the animation player, if one is playing. The ImageView must no longer show its frames.
+     */
+    private void stopAnimation() {
+        if (animationPlayer != null) {
+            animationPlayer.stop();
+            animationPlayer = null;
         }
+    }
+
+    /**
+     * Retires the buffer of the previously displayed pooled frame, if any, so it goes back to the pool.
+     */
+    private void releasePixelBuffer() {
+        if (pixelBuffer != null) {
+            retire(pixelBuffer.getBuffer());
+            pixelBuffer = null;
+        }
+    }
+
+    /**
+     * Limits the transform's pan to keep the image within the bounds of the ScrollPane
+     * during panning and zooming, preventing it from going completely off-screen.
+     */
+    private void applyPanningBounds() {
+        Bounds imageViewBounds = imageView.getBoundsInLocal();
+        Bounds viewportBounds = imageScrollPane.getViewportBounds();
+        double zoom = transform.getZoom();
+        transform.setCenter(
+                boundedCenter(transform.getCenterX(), imageViewBounds.getWidth() * zoom, viewportBounds.getWidth()),
+                boundedCenter(transform.getCenterY(), imageViewBounds.getHeight() * zoom, viewportBounds.getHeight()));
+    }
 
-        // Apply vertical bounds.
-        if (scaledImageHeight > viewportHeight) {
-            newTranslateY = Math.max(-maxTranslateY, Math.min(maxTranslateY, newTranslateY));
-        } else {
-            newTranslateY = 0; // Center image if it's smaller than the viewport.
+    /**
+     * Scales and translates the ImageView as the transform says. Panes sharing the transform may have viewports
+     * of other sizes, so the pan is also limited here, without writing the limited value back.
+     */
+    private void applyTransform() {
+        Bounds imageViewBounds = imageView.getBoundsInLocal();
+        Bounds viewportBounds = imageScrollPane.getViewportBounds();
+        double zoom = transform.getZoom();
+        double scaledImageWidth = imageViewBounds.getWidth() * zoom;
+        double scaledImageHeight = imageViewBounds.getHeight() * zoom;
+
+        imageView.setScaleX(zoom);
+        imageView.setScaleY(zoom);
+        // The ImageView is scaled around its middle, so the center point is (0.5 - center) image widths away from it.
+        imageView.setTranslateX((0.5 - boundedCenter(transform.getCenterX(), scaledImageWidth, viewportBounds.getWidth())) * scaledImageWidth);
+        imageView.setTranslateY((0.5 - boundedCenter(transform.getCenterY(), scaledImageHeight, viewportBounds.getHeight())) * scaledImageHeight);
+    }
+
+    /**
+     * Returns the center position closest to the given one that keeps a scaled image covering the viewport,
+     * or the middle if the image is smaller than the viewport.
+     */
+    private static double boundedCenter(double center, double scaledImageSize, double viewportSize) {
+        if (scaledImageSize <= viewportSize) {
+            return 0.5; // Center image if it's smaller than the viewport.
         }
+        // Maximum distance of the center from the middle of the image, in fractions of the image.
+        double maxOffset = (scaledImageSize - viewportSize) / 2 / scaledImageSize;
+        return Math.max(0.5 - maxOffset, Math.min(0.5 + maxOffset, center));
+    }
+
+    /**
+     * A buffer taken off screen, waiting to go back to the pool.
+     */
+    private record Retired(ByteBuffer buffer, long pulse) {
+    }
 
-        imageView.setTranslateX(newTranslateX);
-        imageView.setTranslateY(newTranslateY);
+    /**
+     * Returns a buffer that was on screen to the pool once the render thread can no longer be drawing from it.
+     */
+    private void retire(ByteBuffer buffer) {
+        retired.add(new Retired(buffer, pulses));
+        retiredReleaser.start();
+    }
+
+    /**
+     * Runs on every pulse while buffers are retired, and releases those retired at least two pulses ago:
+     * the previous pulse's rendering, the last that may have used them, is finished before this pulse renders.
+     * Pinned buffers stay retired; the timer pauses while only they are left and restarts when one is unpinned.
+     */
+    private void releaseRetired() {
+        pulses++;
+        boolean waiting = false;
+        Iterator<Retired> iterator = retired.iterator();
+        while (iterator.hasNext()) {
+            Retired entry = iterator.next();
+            if (pins.containsKey(entry.buffer())) {
+                continue;
+            }
+            if (pulses - entry.pulse() >= 2) {
+                PixelBufferPool.shared().release(entry.buffer());
+                iterator.remove();
+            } else {
+                waiting = true;
+            }
+        }
+        if (!waiting) {
+            retiredReleaser.stop();
+        }
     }
-}
\ No newline at end of file
+}
@@ -10,6 +10,7 @@ import javafx.scene.control.ToolBar;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
 import javafx.scene.layout.VBox;
 import java.nio.file.Path;
 
@@ -21,50 +22,94 @@ import java.nio.file.Path;
 public class MainView {
 
     private final BorderPane root;
+    private final ScrollPane imageScrollPane; // The single image display, shown unless images are compared.
 
     /**
      * Constructs the MainView, setting up the primary layout of the application.
      *
      * @param currentPathLabel     The Label displaying the current directory path.
+     * @param backBtn              The button for going back in the navigation history.
+     * @param forwardBtn           The button for going forward in the navigation history.
      * @param upBtn                The button for navigating up to the parent directory.
      * @param listView             The ListView displaying files and directories.
      * @param aboutBtn             The button to show the About dialog.
      * @param fullscreenBtn        The button to toggle full screen mode.
+     * @param slideshowBtn         The button to start a slideshow of the current directory.
+     * @param adjustBtn            The button to adjust the displayed image.
+     * @param histogramBtn         The button to show or hide the histogram panel.
+     * @param compareBtn           The button to compare the selected images side by side.
+     * @param histogramPanel       The histogram and statistics panel, shown below the file list.
      * @param imageScrollPane      The ScrollPane containing the image display.
      */
-    public MainView(Label currentPathLabel, Button upBtn, ListView<Path> listView,
-                    Button aboutBtn, Button fullscreenBtn, ScrollPane imageScrollPane) {
+    public MainView(Label currentPathLabel, Button backBtn, Button forwardBtn, Button upBtn, ListView<Path> listView,
+                    Button aboutBtn, Button fullscreenBtn, Button slideshowBtn, Button adjustBtn, Button histogramBtn,
+                    Button compareBtn, Region histogramPanel, ScrollPane imageScrollPane) {
 
         // --- Left Sidebar UI Components ---
-        // Configure the "Up" button within a ToolBar.
+        // Configure the "Back", "Forward" and "Up" buttons within a ToolBar.
+        backBtn.setId("backButton");
+        forwardBtn.setId("forwardButton");
         upBtn.setId("upButton");
         HBox.setHgrow(upBtn, Priority.ALWAYS); // Allow button to grow horizontally.
-        ToolBar navBar = new ToolBar(upBtn);
+        ToolBar navBar = new ToolBar(backBtn, forwardBtn, upBtn);
         navBar.setMaxWidth(Double.MAX_VALUE); // Ensure ToolBar expands.
 
-        // Configure bottom buttons (About, Fullscreen) in a VBox.
+        // Configure bottom buttons (About, Fullscreen, Slideshow, Adjust, Histogram, Compare) in a VBox.
         aboutBtn.setId("aboutButton");
         fullscreenBtn.setId("fullscreenButton");
-        VBox bottomButtonsContainer = new VBox(5, aboutBtn, fullscreenBtn); // 5px spacing.
+        slideshowBtn.setId("slideshowButton");
+        adjustBtn.setId("adjustButton");
+        histogramBtn.setId("histogramButton");
+        compareBtn.setId("compareButton");
+        VBox bottomButtonsContainer = new VBox(5, aboutBtn, fullscreenBtn, slideshowBtn, adjustBtn, histogramBtn, compareBtn); // 5px spacing.
         bottomButtonsContainer.setAlignment(Pos.CENTER); // Center buttons.
         bottomButtonsContainer.setMaxWidth(Double.MAX_VALUE); // Ensure VBox expands.
         aboutBtn.setMaxWidth(Double.MAX_VALUE); // Ensure buttons expand.
         fullscreenBtn.setMaxWidth(Double.MAX_VALUE); // Ensure buttons expand.
+        slideshowBtn.setMaxWidth(Double.MAX_VALUE); // Ensure buttons expand.
+        adjustBtn.setMaxWidth(Double.MAX_VALUE); // Ensure buttons expand.
+        histogramBtn.setMaxWidth(Double.MAX_VALUE); // Ensure buttons expand.
+        compareBtn.setMaxWidth(Double.MAX_VALUE); // Ensure buttons expand.
 
-        // Assemble the left sidebar: path label, navigation bar, list view, and bottom buttons.
-        VBox leftSidebar = new VBox(5, currentPathLabel, navBar, listView, bottomButtonsContainer); // 5px spacing.
+        // Assemble the left sidebar: path label, navigation bar, list view, histogram panel, and bottom buttons.
+        VBox leftSidebar = new VBox(5, currentPathLabel, navBar, listView, histogramPanel, bottomButtonsContainer); // 5px spacing.
         VBox.setVgrow(listView, Priority.ALWAYS); // Allow ListView to grow vertically.
         leftSidebar.setPadding(new Insets(8)); // Padding around the sidebar.
         leftSidebar.setPrefWidth(300); // Fixed preferred width for the sidebar.
 
 
         // --- Root Layout (BorderPane) ---
+        this.imageScrollPane = imageScrollPane;
         root = new BorderPane();
         root.setLeft(leftSidebar); // Place the left sidebar on the left.
         root.setCenter(imageScrollPane); // Place the image display in the center.
         BorderPane.setMargin(root.getCenter(), new Insets(8)); // Add margin around the center content.
     }
 
+    /**
+     * Shows the compare view in the center instead of the single image display.
+     * @param compareView The layout of the compare view.
+     */
+    public void showCompareView(Region compareView) {
+        root.setCenter(compareView);
+        BorderPane.setMargin(compareView, new Insets(8));
+    }
+
+    /**
+     * Shows the single image display in the center again.
+     */
+    public void showImageView() {
+        root.setCenter(imageScrollPane);
+    }
+
+    /**
+     * Returns whether the compare view is shown instead of the single image display.
+     * @return true while images are compared.
+     */
+    public boolean isCompareViewShown() {
+        return root.getCenter() != imageScrollPane;
+    }
+
     /**
      * Returns the root layout (BorderPane) of the application, ready to be set in a Scene.
      * @return The BorderPane representing the main application layout.
@@ -0,0 +1,129 @@
+package com.angeasla.pictureviewer.ui;
+
+import com.angeasla.pictureviewer.model.ArchiveFileSystems;
+import com.angeasla.pictureviewer.model.FolderStatistics;
+import com.angeasla.pictureviewer.util.ImageUtils;
+import javafx.scene.control.ListCell;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * A file list cell showing a path's name, a folder icon for directories and archives,
+ * the size of files inside archives, and the number of images and total size of folders.
+ * <p>
+ * Folder statistics are only requested for cells on screen. When a cell is reused for another item,
+ * for example because its folder scrolled out of view, the pending computation is cancelled.
+ */
+public class PathListCell extends ListCell<Path> {
+
+    private static final Image FOLDER_ICON = new Image(Objects.requireNonNull(PathListCell.class.getResourceAsStream("/folder_icon.png")));
+
+    // ImageView instance for the folder icon, created once per cell for efficiency.
+    private final ImageView icon = new ImageView(FOLDER_ICON);
+    private final FolderStatistics folderStatistics;
+
+    private Path statsFor; // The folder whose statistics were requested or shown.
+    private FolderStatistics.Request pending; // The running computation for statsFor, if any.
+    private FolderStatistics.Stats shown; // The statistics shown for statsFor, once known.
+    private String name; // The text shown before the statistics arrive.
+
+    /**
+     * Constructs a PathListCell.
+     *
+     * @param folderStatistics The service computing folder statistics.
+     */
+    public PathListCell(FolderStatistics folderStatistics) {
+        this.folderStatistics = folderStatistics;
+        icon.setFitWidth(16);  // Set desired width for the icon.
+        icon.setFitHeight(16); // Set desired height for the icon.
+    }
+
+    @Override
+    protected void updateItem(Path item, boolean empty) {
+        super.updateItem(item, empty);
+        if (empty || item == null) {
+            // Clear text and graphic if the cell is empty or has no item.
+            cancelStatistics();
+            setText(null);
+            setGraphic(null);
+            return;
+        }
+        // Root paths (e.g., "C:\") are displayed as is, while others show only the file name.
+        if (item.getParent() == null && item.getRoot() != null) {
+            name = item.toString();
+        } else if (item.getFileName() != null) {
+            name = item.getFileName().toString();
+        } else {
+            name = item.toString();
+        }
+
+        // Entries inside archives also show their size, which the archive's central directory provides for free.
+        boolean directory = Files.isDirectory(item);
+        if (ArchiveFileSystems.archiveOf(item) != null && !directory) {
+            try {
+                name += String.format("  (%.1f MB)", Files.size(item) / 1e6);
+            } catch (IOException e) {
+                // Leave the size out if the entry cannot be read.
+            }
+        }
+        setText(name);
+
+        // Directories and archives get the folder icon; regular files have no graphic.
+        setGraphic(directory || ImageUtils.isArchive(item) ? icon : null);
+
+        // Drive roots are left out: walking a whole disk is not what a glance at the list should trigger.
+        if (directory && item.getParent() != null) {
+            showStatistics(item);
+        } else {
+            cancelStatistics();
+        }
+    }
+
+    /**
+     * Shows a folder's statistics, computing them in the background unless they are fresh in the cache.
+     */
+    private void showStatistics(Path dir) {
+        if (dir.equals(statsFor)) {
+            if (shown != null) {
+                setText(name + describe(shown)); // Redrawn without moving to another folder.
+            }
+            return;
+        }
+        cancelStatistics();
+        statsFor = dir;
+        shown = folderStatistics.getIfFresh(dir);
+        if (shown != null) {
+            setText(name + describe(shown));
+            return;
+        }
+        pending = folderStatistics.request(dir, stats -> {
+            pending = null;
+            shown = stats;
+            if (dir.equals(getItem())) {
+                setText(name + describe(stats));
+            }
+        });
+    }
+
+    private void cancelStatistics() {
+        if (pending != null) {
+            pending.cancel();
+            pending = null;
+        }
+        statsFor = null;
+        shown = null;
+    }
+
+    private static String describe(FolderStatistics.Stats stats) {
+        String size = stats.bytes() >= 1e9
+                ? String.format(Locale.ROOT, "%.1f GB", stats.bytes() / 1e9)
+                : String.format(Locale.ROOT, "%.1f MB", stats.bytes() / 1e6);
+        return "  (" + stats.images() + (stats.images() == 1 ? " image, " : " images, ") + size + ")";
+    }
+}
@@ -0,0 +1,90 @@
+package com.angeasla.pictureviewer.ui;
+
+import com.angeasla.pictureviewer.model.SlideshowPipeline;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Cursor;
+import javafx.scene.Scene;
+import javafx.scene.image.ImageView;
+import javafx.scene.input.KeyCode;
+import javafx.scene.layout.StackPane;
+import javafx.stage.Screen;
+import javafx.stage.Stage;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A full screen window that plays a slideshow driven by a {@link SlideshowPipeline}.
+ * The window closes, and the pipeline stops, on Escape or a mouse click.
+ */
+public class SlideshowView {
+
+    /**
+     * Number of upcoming slides the pipeline keeps decoded ahead of the current one.
+     */
+    private static final int LOOKAHEAD = 3;
+
+    private final Stage stage = new Stage();
+    private final ImageView imageView = new ImageView();
+    private final SlideshowPipeline pipeline;
+
+    /**
+     * Constructs a SlideshowView on the screen the owner window is on.
+     *
+     * @param owner          The main application stage.
+     * @param slides         The image files to show.
+     * @param startIndex     Index of the first slide to show.
+     * @param intervalMillis Time each slide stays on screen, in milliseconds.
+     * @param policy         How to handle slides that are not decoded by their deadline.
+     */
+    public SlideshowView(Stage owner, List<Path> slides, int startIndex, long intervalMillis,
+                         SlideshowPipeline.SlowFramePolicy policy) {
+        // Decode at the physical resolution of the screen the application is on.
+        Screen screen = Screen.getScreensForRectangle(owner.getX(), owner.getY(), owner.getWidth(), owner.getHeight())
+                .stream().findFirst().orElse(Screen.getPrimary());
+        Rectangle2D bounds = screen.getBounds();
+        double frameWidth = bounds.getWidth() * screen.getOutputScaleX();
+        double frameHeight = bounds.getHeight() * screen.getOutputScaleY();
+        this.pipeline = new SlideshowPipeline(slides, startIndex, intervalMillis, LOOKAHEAD, policy, frameWidth, frameHeight);
+
+        imageView.setPreserveRatio(true);
+        imageView.setSmooth(true);
+        StackPane root = new StackPane(imageView);
+        root.setCursor(Cursor.NONE);
+        imageView.fitWidthProperty().bind(root.widthProperty());
+        imageView.fitHeightProperty().bind(root.heightProperty());
+
+        Scene scene = new Scene(root, bounds.getWidth(), bounds.getHeight());
+        scene.getStylesheets().add(Objects.requireNonNull(SlideshowView.class.getResource("/style.css")).toExternalForm());
+        scene.setOnKeyPressed(e -> {
+            if (e.getCode() == KeyCode.ESCAPE) {
+                stage.close();
+            }
+        });
+        scene.setOnMouseClicked(e -> stage.close());
+
+        stage.initOwner(owner);
+        stage.setTitle("Slideshow");
+        stage.setScene(scene);
+        stage.setX(bounds.getMinX());
+        stage.setY(bounds.getMinY());
+        stage.setFullScreenExitHint("");
+        stage.setOnHidden(e -> pipeline.stop());
+        // Leaving full screen (e.g. via the window manager) also ends the slideshow.
+        stage.fullScreenProperty().addListener((obs, oldVal, newVal) -> {
+            if (!newVal) {
+                stage.close();
+            }
+        });
+    }
+
+    /**
+     * Shows the slideshow window in full screen and starts playback.
+     */
+    public void show() {
+        stage.setFullScreen(true);
+        stage.show();
+        pipeline.start(imageView::setImage);
+    }
+}
@@ -0,0 +1,214 @@
+package com.angeasla.pictureviewer.ui;
+
+import com.angeasla.pictureviewer.model.DecodedImageCache;
+import javafx.animation.PauseTransition;
+import javafx.geometry.Bounds;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.Pane;
+import javafx.util.Duration;
+
+import java.awt.Rectangle;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sharpens the part of an image that an {@link ImageDisplayPane} shows when it is zoomed in beyond the resolution
+ * of the image's preview, by drawing higher-resolution tiles from a {@link DecodedImageCache} over it.
+ * <p>
+ * Only the tiles covering the visible region are requested, at the lowest resolution that still matches the
+ * screen. Requests wait until zooming or panning pauses briefly; meanwhile, tiles already shown move with the image,
+ * and tiles at the previous resolution stay until the new ones have all arrived.
+ */
+public class TileLayer {
+
+    private static final int MAX_REDUCTION = 8;
+    private static final int MAX_TILES = 64; // Limits the tiles requested at once, e.g. for a huge pane.
+
+    /**
+     * A tile of the displayed image.
+     */
+    private record Tile(int reduction, int column, int row) {
+    }
+
+    private final ImageDisplayPane pane;
+    private final DecodedImageCache cache;
+    private final Map<Tile, ImageView> shown = new HashMap<>(); // Tiles on screen, in the pane's overlay.
+    private final Map<Tile, DecodedImageCache.Request> requested = new HashMap<>(); // Tiles being decoded.
+    private final PauseTransition settle = new PauseTransition(Duration.millis(150));
+
+    private Path path; // The image the tiles belong to, or null if the pane shows something else.
+    private DecodedImageCache.CachedImage preview; // The preview the pane shows for path.
+    private Set<Tile> wanted = Set.of(); // The tiles covering the visible region, as last requested.
+
+    /**
+     * Constructs a TileLayer drawing into a pane's overlay.
+     *
+     * @param pane  The pane whose image is sharpened.
+     * @param cache The cache providing the previews and tiles.
+     */
+    public TileLayer(ImageDisplayPane pane, DecodedImageCache cache) {
+        this.pane = pane;
+        this.cache = cache;
+        settle.setOnFinished(e -> requestTiles());
+
+        ImageView imageView = pane.getImageView();
+        imageView.boundsInParentProperty().addListener((obs, oldVal, newVal) -> viewChanged());
+        pane.getOverlay().widthProperty().addListener((obs, oldVal, newVal) -> viewChanged());
+        pane.getOverlay().heightProperty().addListener((obs, oldVal, newVal) -> viewChanged());
+        imageView.imageProperty().addListener((obs, oldVal, newVal) -> {
+            if (preview != null && newVal != preview.image()) {
+                clear(); // The pane shows another image now.
+            }
+        });
+    }
+
+    /**
+     * Starts sharpening an image. The pane must display the preview's image.
+     *
+     * @param path    The image file.
+     * @param preview The preview displayed by the pane.
+     */
+    public void show(Path path, DecodedImageCache.CachedImage preview) {
+        clear();
+        this.path = path;
+        this.preview = preview;
+        viewChanged();
+    }
+
+    /**
+     * Removes all tiles and cancels the pending requests.
+     */
+    public void clear() {
+        settle.stop();
+        requested.values().forEach(DecodedImageCache.Request::cancel);
+        requested.clear();
+        shown.clear();
+        pane.getOverlay().getChildren().clear();
+        wanted = Set.of();
+        path = null;
+        preview = null;
+    }
+
+    private void viewChanged() {
+        if (path == null) {
+            return;
+        }
+        shown.forEach(this::position);
+        settle.playFromStart();
+    }
+
+    /**
+     * Requests the tiles covering the visible region, and drops those that are no longer needed.
+     */
+    private void requestTiles() {
+        if (path == null) {
+            return;
+        }
+        Bounds image = pane.getImageView().getBoundsInParent();
+        Pane overlay = pane.getOverlay();
+        double outputScale = overlay.getScene() != null && overlay.getScene().getWindow() != null
+                ? overlay.getScene().getWindow().getOutputScaleX() : 1.0;
+        // Screen pixels per full-resolution pixel, and the preview's resolution in the same unit.
+        double density = image.getWidth() * outputScale / preview.sourceWidth();
+        double previewDensity = preview.image().getWidth() / preview.sourceWidth();
+        int reduction = 1;
+        while (reduction < MAX_REDUCTION && 1.0 / (reduction * 2) >= density) {
+            reduction *= 2;
+        }
+
+        double left = Math.max(image.getMinX(), 0);
+        double top = Math.max(image.getMinY(), 0);
+        double right = Math.min(image.getMaxX(), overlay.getWidth());
+        double bottom = Math.min(image.getMaxY(), overlay.getHeight());
+        Set<Tile> visible = new HashSet<>();
+        if (density > previewDensity && 1.0 / reduction > previewDensity && right > left && bottom > top) {
+            // Convert the visible region to full-resolution pixels, then to tile columns and rows.
+            double sourcePerPixel = preview.sourceWidth() / image.getWidth();
+            int tileSize = DecodedImageCache.TILE_SIZE * reduction;
+            int lastColumn = (preview.sourceWidth() - 1) / tileSize;
+            int lastRow = (preview.sourceHeight() - 1) / tileSize;
+            int firstColumn = (int) ((left - image.getMinX()) * sourcePerPixel / tileSize);
+            int firstRow = (int) ((top - image.getMinY()) * sourcePerPixel / tileSize);
+            int endColumn = Math.min(lastColumn, (int) ((right - image.getMinX()) * sourcePerPixel / tileSize));
+            int endRow = Math.min(lastRow, (int) ((bottom - image.getMinY()) * sourcePerPixel / tileSize));
+            for (int row = firstRow; row <= endRow && visible.size() < MAX_TILES; row++) {
+                for (int column = firstColumn; column <= endColumn && visible.size() < MAX_TILES; column++) {
+                    visible.add(new Tile(reduction, column, row));
+                }
+            }
+        }
+        wanted = visible;
+
+        // Cancel requests for tiles that are out of view or at another resolution.
+        Iterator<Map.Entry<Tile, DecodedImageCache.Request>> pendingTiles = requested.entrySet().iterator();
+        while (pendingTiles.hasNext()) {
+            Map.Entry<Tile, DecodedImageCache.Request> entry = pendingTiles.next();
+            if (!visible.contains(entry.getKey())) {
+                entry.getValue().cancel();
+                pendingTiles.remove();
+            }
+        }
+        dropUnwantedTiles(shown.keySet().containsAll(visible));
+
+        Path tilePath = path;
+        for (Tile tile : visible) {
+            if (!shown.containsKey(tile) && !requested.containsKey(tile)) {
+                DecodedImageCache.Request request = cache.tile(path, preview, tile.reduction(), tile.column(), tile.row(),
+                        decoded -> tileArrived(tilePath, tile, decoded));
+                if (!shown.containsKey(tile)) { // Not delivered at once from the cache.
+                    requested.put(tile, request);
+                }
+            }
+        }
+    }
+
+    private void tileArrived(Path tilePath, Tile tile, DecodedImageCache.CachedImage decoded) {
+        requested.remove(tile);
+        if (decoded == null || !tilePath.equals(path) || !wanted.contains(tile)) {
+            return;
+        }
+        ImageView view = new ImageView(decoded.image());
+        view.setSmooth(true);
+        shown.put(tile, view);
+        pane.getOverlay().getChildren().add(view); // Added last, so sharper tiles cover older ones.
+        position(tile, view);
+        if (shown.keySet().containsAll(wanted)) {
+            dropUnwantedTiles(true);
+        }
+    }
+
+    /**
+     * Removes the tiles that are not wanted. Tiles at another resolution are only removed if the wanted tiles
+     * are all shown, so that the image does not turn blurry while the new resolution loads.
+     */
+    private void dropUnwantedTiles(boolean complete) {
+        int reduction = wanted.isEmpty() ? 0 : wanted.iterator().next().reduction();
+        Iterator<Map.Entry<Tile, ImageView>> tiles = shown.entrySet().iterator();
+        while (tiles.hasNext()) {
+            Map.Entry<Tile, ImageView> entry = tiles.next();
+            Tile tile = entry.getKey();
+            if (!wanted.contains(tile) && (complete || tile.reduction() == reduction)) {
+                pane.getOverlay().getChildren().remove(entry.getValue());
+                tiles.remove();
+            }
+        }
+    }
+
+    /**
+     * Places a tile over the part of the displayed image it covers.
+     */
+    private void position(Tile tile, ImageView view) {
+        Bounds image = pane.getImageView().getBoundsInParent();
+        double scaleX = image.getWidth() / preview.sourceWidth();
+        double scaleY = image.getHeight() / preview.sourceHeight();
+        Rectangle region = DecodedImageCache.tileRegion(preview, tile.reduction(), tile.column(), tile.row());
+        view.setLayoutX(image.getMinX() + region.x * scaleX);
+        view.setLayoutY(image.getMinY() + region.y * scaleY);
+        view.setFitWidth(region.width * scaleX);
+        view.setFitHeight(region.height * scaleY);
+    }
+}
@@ -0,0 +1,85 @@
+package com.angeasla.pictureviewer.ui;
+
+import javafx.beans.InvalidationListener;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+
+/**
+ * The zoom and pan of an image display, which several {@link ImageDisplayPane}s can share so that they
+ * zoom and pan together, as in the compare view.
+ * <p>
+ * The pan is stored as the point of the image shown at the center of the viewport, in fractions of the image's
+ * width and height, rather than in pixels. Panes showing images of different resolutions or at different sizes
+ * therefore stay on the same detail.
+ */
+public class ViewTransform {
+
+    /** The largest zoom factor relative to the image fitted to the viewport. */
+    public static final double MAX_ZOOM = 10.0;
+    /** The smallest zoom factor relative to the image fitted to the viewport. */
+    public static final double MIN_ZOOM = 0.4;
+
+    private final DoubleProperty zoom = new SimpleDoubleProperty(1.0);
+    private final DoubleProperty centerX = new SimpleDoubleProperty(0.5);
+    private final DoubleProperty centerY = new SimpleDoubleProperty(0.5);
+
+    /**
+     * Returns the zoom factor, 1.0 meaning the image fitted to the viewport.
+     * @return The zoom factor.
+     */
+    public double getZoom() {
+        return zoom.get();
+    }
+
+    /**
+     * Sets the zoom factor, limited to the range from {@link #MIN_ZOOM} to {@link #MAX_ZOOM}.
+     * @param value The zoom factor.
+     */
+    public void setZoom(double value) {
+        zoom.set(Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, value)));
+    }
+
+    /**
+     * Returns the horizontal position of the image point shown at the center of the viewport.
+     * @return The position, from 0 (left edge) to 1 (right edge).
+     */
+    public double getCenterX() {
+        return centerX.get();
+    }
+
+    /**
+     * Returns the vertical position of the image point shown at the center of the viewport.
+     * @return The position, from 0 (top edge) to 1 (bottom edge).
+     */
+    public double getCenterY() {
+        return centerY.get();
+    }
+
+    /**
+     * Sets the image point shown at the center of the viewport.
+     * @param x The horizontal position, from 0 (left edge) to 1 (right edge).
+     * @param y The vertical position, from 0 (top edge) to 1 (bottom edge).
+     */
+    public void setCenter(double x, double y) {
+        centerX.set(x);
+        centerY.set(y);
+    }
+
+    /**
+     * Shows the whole image again, unzoomed and centered.
+     */
+    public void reset() {
+        zoom.set(1.0);
+        setCenter(0.5, 0.5);
+    }
+
+    /**
+     * Adds a listener notified whenever the zoom or the pan changes.
+     * @param listener The listener.
+     */
+    public void addListener(InvalidationListener listener) {
+        zoom.addListener(listener);
+        centerX.addListener(listener);
+        centerY.addListener(listener);
+    }
+}
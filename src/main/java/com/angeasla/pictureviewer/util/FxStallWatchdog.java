@@ -0,0 +1,149 @@
+package com.angeasla.pictureviewer.util;
+
+import javafx.application.Platform;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Detects stalls of the JavaFX Application Thread and records where they happen.
+ * <p>
+ * A daemon thread posts a pulse to the FX thread at a fixed period and measures how late it runs.
+ * When a pulse is still pending beyond the threshold, the FX thread's stack is captured and logged once
+ * per stall, which pinpoints the blocking call (typically file system access on a slow or stale mount).
+ * Every stall's duration is recorded in a histogram with power-of-two millisecond buckets,
+ * printed with {@link #getHistogram()}.
+ * <p>
+ * The threshold is set with the {@code pictureviewer.watchdog.thresholdMs} system property (default 200 ms).
+ */
+public class FxStallWatchdog {
+
+    private static final long PULSE_PERIOD_MILLIS = 50;
+    // Upper bounds of the histogram buckets in milliseconds; the last bucket collects everything longer.
+    private static final long[] BUCKET_LIMITS = {100, 200, 400, 800, 1600, 3200, 6400, 12800};
+
+    private final long thresholdMillis;
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_LIMITS.length + 1);
+    private volatile Thread fxThread;
+    private volatile long pendingSince; // nanoTime when the outstanding pulse was posted, or 0 if none.
+    private volatile boolean running;
+    private Thread watcher;
+
+    /**
+     * Constructs a FxStallWatchdog.
+     *
+     * @param thresholdMillis How late a pulse may run before it counts as a stall, in milliseconds.
+     */
+    public FxStallWatchdog(long thresholdMillis) {
+        this.thresholdMillis = thresholdMillis;
+    }
+
+    /**
+     * Constructs a FxStallWatchdog using the threshold from the {@code pictureviewer.watchdog.thresholdMs} property.
+     */
+    public FxStallWatchdog() {
+        this(Long.getLong("pictureviewer.watchdog.thresholdMs", 200));
+    }
+
+    /**
+     * Starts watching the FX thread. May be called from any thread once the JavaFX toolkit is running.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        if (Platform.isFxApplicationThread()) {
+            fxThread = Thread.currentThread(); // Known before the first pulse, in case that one already stalls.
+        }
+        watcher = new Thread(this::watch, "fx-stall-watchdog");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Stops watching. With {@code -Dpictureviewer.diagnostics=true}, the stall histogram is logged.
+     */
+    public synchronized void stop() {
+        running = false;
+        if (watcher != null) {
+            watcher.interrupt();
+            watcher = null;
+        }
+        if (Boolean.getBoolean("pictureviewer.diagnostics")) {
+            System.err.println("FX stall histogram: " + getHistogram());
+        }
+    }
+
+    /**
+     * Returns the number of stalls recorded per duration bucket, e.g. {@code "<=200ms: 3, <=400ms: 1"}.
+     * @return The stall histogram, with empty buckets omitted.
+     */
+    public String getHistogram() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < histogram.length(); i++) {
+            long count = histogram.get(i);
+            if (count == 0) {
+                continue;
+            }
+            if (!sb.isEmpty()) {
+                sb.append(", ");
+            }
+            sb.append(i < BUCKET_LIMITS.length ? "<=" + BUCKET_LIMITS[i] : ">" + BUCKET_LIMITS[BUCKET_LIMITS.length - 1])
+                    .append("ms: ").append(count);
+        }
+        return sb.isEmpty() ? "no stalls" : sb.toString();
+    }
+
+    private void watch() {
+        try {
+            while (running) {
+                long posted = System.nanoTime();
+                pendingSince = posted;
+                Platform.runLater(() -> {
+                    fxThread = Thread.currentThread();
+                    long lateMillis = (System.nanoTime() - posted) / 1_000_000;
+                    pendingSince = 0;
+                    if (lateMillis >= thresholdMillis) {
+                        record(lateMillis);
+                    }
+                });
+
+                // Wait for the pulse to run, capturing the FX thread's stack once if it is late.
+                boolean reported = false;
+                while (running && pendingSince == posted) {
+                    long waitingMillis = (System.nanoTime() - posted) / 1_000_000;
+                    if (!reported && waitingMillis >= thresholdMillis) {
+                        reportStall(waitingMillis);
+                        reported = true;
+                    }
+                    Thread.sleep(PULSE_PERIOD_MILLIS / 2);
+                }
+                Thread.sleep(PULSE_PERIOD_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            // Stopped.
+        }
+    }
+
+    private void record(long stallMillis) {
+        int bucket = 0;
+        while (bucket < BUCKET_LIMITS.length && stallMillis > BUCKET_LIMITS[bucket]) {
+            bucket++;
+        }
+        histogram.incrementAndGet(bucket);
+        System.err.printf(Locale.ROOT, "FX thread stall ended after %d ms%n", stallMillis);
+    }
+
+    private void reportStall(long waitingMillis) {
+        Thread fx = fxThread;
+        StringBuilder sb = new StringBuilder(String.format(Locale.ROOT,
+                "FX thread stalled for %d ms (threshold %d ms)", waitingMillis, thresholdMillis));
+        if (fx != null) {
+            sb.append(", stack:");
+            Arrays.stream(fx.getStackTrace()).forEach(frame -> sb.append(System.lineSeparator()).append("\tat ").append(frame));
+        }
+        System.err.println(sb);
+    }
+}
@@ -0,0 +1,277 @@
+package com.angeasla.pictureviewer.util;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/**
+ * Histograms and summary statistics of an image: per-channel red, green, blue and luminance histograms,
+ * mean and standard deviation per channel, and the share of clipped pixels.
+ * <p>
+ * Pixels are read through the image's {@link PixelReader} in bands of rows that are processed in parallel,
+ * so no full copy of the image is made. Per-pixel work (channel extraction, Rec. 709 luminance and clipping
+ * tests) uses the Java Vector API when the {@code jdk.incubator.vector} module is present at runtime
+ * (start with {@code --add-modules jdk.incubator.vector}); otherwise an equivalent scalar kernel is used.
+ * Means and deviations are derived from the histograms, which are exact for 8-bit channels.
+ * <p>
+ * Translucent pixels are counted with their premultiplied values, so statistics are exact for opaque images.
+ */
+public class ImageStatistics {
+
+    /** Index of the red channel in {@link #histogram(int)} and the other per-channel accessors. */
+    public static final int RED = 0;
+    /** Index of the green channel. */
+    public static final int GREEN = 1;
+    /** Index of the blue channel. */
+    public static final int BLUE = 2;
+    /** Index of the luminance channel. */
+    public static final int LUMA = 3;
+
+    // Pixels read per PixelReader call; large enough to amortize the call, small enough to stay in cache.
+    private static final int CHUNK_PIXELS = 64 * 1024;
+    private static final Kernel KERNEL = loadKernel();
+
+    /**
+     * Accumulates the pixels of one chunk into a band's histograms.
+     * Implemented by a scalar kernel and, when available, a Vector API kernel.
+     */
+    interface Kernel {
+        /**
+         * Adds a chunk of pixels to the histograms and clipping counts.
+         *
+         * @param argb      Pixels as premultiplied ARGB ints.
+         * @param length    Number of pixels to process.
+         * @param luma      Scratch space for the pixels' luminance, at least length long.
+         * @param histogram Red, green, blue and luminance histograms to add to.
+         * @param clipped   Counts to add to: pixels with a channel at 0, and pixels with a channel at 255.
+         */
+        void accumulate(int[] argb, int length, int[] luma, long[][] histogram, long[] clipped);
+    }
+
+    private final long[][] histograms;
+    private final long pixels;
+    private final long clippedShadows;
+    private final long clippedHighlights;
+    private final long elapsedNanos;
+
+    private ImageStatistics(long[][] histograms, long pixels, long clippedShadows, long clippedHighlights, long elapsedNanos) {
+        this.histograms = histograms;
+        this.pixels = pixels;
+        this.clippedShadows = clippedShadows;
+        this.clippedHighlights = clippedHighlights;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Computes the statistics of an image. This reads every pixel and should not run on the FX thread.
+     *
+     * @param image A fully loaded image.
+     * @return The statistics.
+     */
+    public static ImageStatistics compute(Image image) {
+        long start = System.nanoTime();
+        PixelReader reader = image.getPixelReader();
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        int rowsPerChunk = Math.max(1, CHUNK_PIXELS / Math.max(1, width));
+        int chunks = (height + rowsPerChunk - 1) / rowsPerChunk;
+
+        // Each band reads a contiguous run of chunks into its own buffers and histograms,
+        // which are merged once all bands are done. A few bands per core balance uneven progress.
+        int bands = Math.min(chunks, Runtime.getRuntime().availableProcessors() * 4);
+        Band total = IntStream.range(0, bands).parallel()
+                .mapToObj(index -> {
+                    Band band = new Band(width * rowsPerChunk);
+                    for (int chunk = index * chunks / bands; chunk < (index + 1) * chunks / bands; chunk++) {
+                        int y = chunk * rowsPerChunk;
+                        int rows = Math.min(rowsPerChunk, height - y);
+                        reader.getPixels(0, y, width, rows, PixelFormat.getIntArgbPreInstance(), band.argb, 0, width);
+                        KERNEL.accumulate(band.argb, width * rows, band.luma, band.histogram, band.clipped);
+                    }
+                    return band;
+                })
+                .reduce(Band::merge)
+                .orElseGet(() -> new Band(0));
+        return new ImageStatistics(total.histogram, (long) width * height, total.clipped[0], total.clipped[1],
+                System.nanoTime() - start);
+    }
+
+    /**
+     * Returns whether the Vector API kernel is in use.
+     * @return true if per-pixel work is vectorized, false if the scalar fallback is used.
+     */
+    public static boolean isVectorized() {
+        return !(KERNEL instanceof ScalarKernel);
+    }
+
+    /**
+     * Returns the histogram of a channel.
+     * @param channel {@link #RED}, {@link #GREEN}, {@link #BLUE} or {@link #LUMA}.
+     * @return Pixel counts per level 0 to 255. The array must not be modified.
+     */
+    public long[] histogram(int channel) {
+        return histograms[channel];
+    }
+
+    /**
+     * Returns the mean level of a channel.
+     * @param channel {@link #RED}, {@link #GREEN}, {@link #BLUE} or {@link #LUMA}.
+     * @return The mean, from 0 to 255.
+     */
+    public double mean(int channel) {
+        if (pixels == 0) {
+            return 0;
+        }
+        long sum = 0;
+        long[] h = histograms[channel];
+        for (int level = 0; level < 256; level++) {
+            sum += level * h[level];
+        }
+        return (double) sum / pixels;
+    }
+
+    /**
+     * Returns the standard deviation of a channel's levels.
+     * @param channel {@link #RED}, {@link #GREEN}, {@link #BLUE} or {@link #LUMA}.
+     * @return The standard deviation, in levels.
+     */
+    public double standardDeviation(int channel) {
+        if (pixels == 0) {
+            return 0;
+        }
+        double mean = mean(channel);
+        double sumSquares = 0;
+        long[] h = histograms[channel];
+        for (int level = 0; level < 256; level++) {
+            sumSquares += (level - mean) * (level - mean) * h[level];
+        }
+        return Math.sqrt(sumSquares / pixels);
+    }
+
+    /**
+     * Returns the share of pixels with at least one channel at 0.
+     * @return The percentage of shadow-clipped pixels.
+     */
+    public double clippedShadowsPercent() {
+        return pixels == 0 ? 0 : 100.0 * clippedShadows / pixels;
+    }
+
+    /**
+     * Returns the share of pixels with at least one channel at 255.
+     * @return The percentage of highlight-clipped pixels.
+     */
+    public double clippedHighlightsPercent() {
+        return pixels == 0 ? 0 : 100.0 * clippedHighlights / pixels;
+    }
+
+    /**
+     * Returns the number of pixels counted.
+     * @return The image's width times its height.
+     */
+    public long getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Returns how long the computation took.
+     * @return The elapsed time in milliseconds.
+     */
+    public double getElapsedMillis() {
+        return elapsedNanos / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "R %.1f ±%.1f  G %.1f ±%.1f  B %.1f ±%.1f  L %.1f ±%.1f, clipped %.2f%% shadows %.2f%% highlights",
+                mean(RED), standardDeviation(RED), mean(GREEN), standardDeviation(GREEN),
+                mean(BLUE), standardDeviation(BLUE), mean(LUMA), standardDeviation(LUMA),
+                clippedShadowsPercent(), clippedHighlightsPercent());
+    }
+
+    /**
+     * Uses the Vector API kernel if the incubator module is present, and the scalar kernel otherwise.
+     * The vector kernel is loaded reflectively so that this class links without the module.
+     */
+    private static Kernel loadKernel() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+                && !Boolean.getBoolean("pictureviewer.statistics.scalar")) {
+            try {
+                return (Kernel) Class.forName(ImageStatistics.class.getPackageName() + ".VectorStatisticsKernel")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                System.err.println("Vector API unavailable, using scalar statistics: " + e.getMessage());
+            }
+        }
+        return new ScalarKernel();
+    }
+
+    /**
+     * Histograms and counts accumulated by one band, along with its read buffers.
+     */
+    private static final class Band {
+        final int[] argb;
+        final int[] luma;
+        final long[][] histogram = new long[4][256];
+        final long[] clipped = new long[2];
+
+        Band(int capacity) {
+            argb = new int[capacity];
+            luma = new int[capacity];
+        }
+
+        Band merge(Band other) {
+            for (int c = 0; c < 4; c++) {
+                for (int level = 0; level < 256; level++) {
+                    histogram[c][level] += other.histogram[c][level];
+                }
+            }
+            clipped[0] += other.clipped[0];
+            clipped[1] += other.clipped[1];
+            return this;
+        }
+    }
+
+    /**
+     * The portable kernel, used when the Vector API is not available.
+     */
+    static final class ScalarKernel implements Kernel {
+        @Override
+        public void accumulate(int[] argb, int length, int[] luma, long[][] histogram, long[] clipped) {
+            long[] red = histogram[RED];
+            long[] green = histogram[GREEN];
+            long[] blue = histogram[BLUE];
+            long[] lum = histogram[LUMA];
+            long shadows = 0;
+            long highlights = 0;
+            for (int i = 0; i < length; i++) {
+                int p = argb[i];
+                int r = (p >>> 16) & 0xFF;
+                int g = (p >>> 8) & 0xFF;
+                int b = p & 0xFF;
+                red[r]++;
+                green[g]++;
+                blue[b]++;
+                lum[luma(r, g, b)]++;
+                if (Math.min(r, Math.min(g, b)) == 0) {
+                    shadows++;
+                }
+                if (Math.max(r, Math.max(g, b)) == 255) {
+                    highlights++;
+                }
+            }
+            clipped[0] += shadows;
+            clipped[1] += highlights;
+        }
+    }
+
+    /**
+     * Rec. 709 luminance with integer weights that sum to 256, so the result stays within 0 to 255.
+     */
+    static int luma(int r, int g, int b) {
+        return (54 * r + 183 * g + 19 * b + 128) >>> 8;
+    }
+}
@@ -1,12 +1,23 @@
 package com.angeasla.pictureviewer.util;
 
+import com.angeasla.pictureviewer.codec.DecoderRegistry;
+import com.angeasla.pictureviewer.codec.ImageFormat;
+
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 
 /**
  * Utility class for image-related helper methods.
  */
 public class ImageUtils {
 
+    // AVIF and HEIF files are only listed when a decoder plugin for them is installed.
+    private static final boolean AVIF_SUPPORTED = DecoderRegistry.shared().supports(ImageFormat.AVIF);
+    private static final boolean HEIF_SUPPORTED = DecoderRegistry.shared().supports(ImageFormat.HEIF);
+
     /**
      * Checks if a given File represents a recognized image file type based on its extension.
      *
@@ -14,9 +25,64 @@ public class ImageUtils {
      * @return true if the file extension indicates it's an image, false otherwise.
      */
     public static boolean isImage(File f) {
-        String n = f.getName().toLowerCase(); // Get file name in lowercase.
+        return isImageName(f.getName());
+    }
+
+    /**
+     * Checks if a given Path represents a recognized image file type based on its extension.
+     * Unlike {@link #isImage(File)}, this also works for paths inside archives.
+     *
+     * @param p The Path to check.
+     * @return true if the file extension indicates it's an image, false otherwise.
+     */
+    public static boolean isImage(Path p) {
+        return p.getFileName() != null && isImageName(p.getFileName().toString());
+    }
+
+    /**
+     * Checks if a given Path is a ZIP or CBZ archive that can be browsed like a directory.
+     *
+     * @param p The Path to check.
+     * @return true if the file extension indicates a browsable archive, false otherwise.
+     */
+    public static boolean isArchive(Path p) {
+        if (p.getFileName() == null) {
+            return false;
+        }
+        String n = p.getFileName().toString().toLowerCase();
+        return n.endsWith(".zip") || n.endsWith(".cbz");
+    }
+
+    private static boolean isImageName(String name) {
+        String n = name.toLowerCase(); // Get file name in lowercase.
         // Check for common image file extensions.
         return n.endsWith(".png") || n.endsWith(".jpg") || n.endsWith(".jpeg") ||
-                n.endsWith(".gif") || n.endsWith(".bmp") || n.endsWith(".webp");
+                n.endsWith(".gif") || n.endsWith(".bmp") || n.endsWith(".webp") ||
+                n.endsWith(".tif") || n.endsWith(".tiff") ||
+                (AVIF_SUPPORTED && n.endsWith(".avif")) || (HEIF_SUPPORTED && (n.endsWith(".heic") || n.endsWith(".heif")));
+    }
+
+    /**
+     * Lists the directories, archives and image files directly inside a directory.
+     * Directories and archives come first, then images, both sorted alphabetically.
+     * This is the listing shown in the file list, and also the one walked by the batch exporter.
+     * It works the same for directories inside archives.
+     *
+     * @param dir The directory to list.
+     * @return The sorted directories, archives and image files in the directory.
+     * @throws IOException If the directory cannot be read.
+     */
+    public static List<Path> listDirectory(Path dir) throws IOException {
+        try (var s = Files.list(dir)) { // List contents of the directory.
+            record Entry(Path path, boolean folder) {
+            }
+            return s.map(p -> new Entry(p, Files.isDirectory(p) || isArchive(p))) // Check each entry once.
+                    .filter(e -> e.folder() || isImage(e.path())) // Filter for directories, archives and images.
+                    .sorted((a, b) -> { // Sort: directories first, then files, both alphabetically.
+                        return a.folder() == b.folder() ? a.path().compareTo(b.path()) : a.folder() ? -1 : 1;
+                    })
+                    .map(Entry::path)
+                    .toList();
+        }
     }
-}
\ No newline at end of file
+}
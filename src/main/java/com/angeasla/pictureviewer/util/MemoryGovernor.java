@@ -0,0 +1,385 @@
+package com.angeasla.pictureviewer.util;
+
+import javax.management.NotificationEmitter;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watches heap and direct memory usage and degrades the application gracefully as memory runs low.
+ * <p>
+ * Usage thresholds are set on the tenured heap pools, and their notifications trigger an immediate
+ * re-evaluation; a periodic check catches direct memory growth and the return to normal. Heap usage is
+ * measured as what survived the last collection of the tenured pools, so short-lived garbage does not count.
+ * When usage crosses the pressure threshold, registered caches are shed in priority order
+ * (see {@link CacheTier}), and image loads are asked to decode at lower resolution.
+ * Loads that still would not fit are refused with a {@link LoadRefusedException} instead of running
+ * into an OutOfMemoryError. Every transition is counted, see {@link #getStats()}, and logged to standard error
+ * with {@code -Dpictureviewer.diagnostics=true}.
+ */
+public class MemoryGovernor {
+
+    private static final MemoryGovernor SHARED = new MemoryGovernor(0.70, 0.85);
+    private static final boolean DIAGNOSTICS = Boolean.getBoolean("pictureviewer.diagnostics");
+
+    /**
+     * How much memory pressure the application is under.
+     */
+    public enum Level {
+        /** Plenty of memory: images are decoded with zoom headroom and caches are kept. */
+        NORMAL,
+        /** Usage above the pressure threshold: prefetched images and thumbnails are shed, decodes use screen resolution. */
+        PRESSURE,
+        /** Usage above the critical threshold: all caches are shed, decodes use the visible viewport resolution. */
+        CRITICAL
+    }
+
+    /**
+     * Cache categories, in the order they are shed under pressure.
+     */
+    public enum CacheTier {
+        /** Images decoded ahead of time, and idle decode buffers kept for reuse. */
+        PREFETCHED_IMAGES,
+        /** Reduced-size previews. */
+        THUMBNAILS,
+        /** Cached directory listings. */
+        LISTING_CACHES
+    }
+
+    /**
+     * A cache that can drop its contents when memory runs low.
+     */
+    @FunctionalInterface
+    public interface Shedder {
+        /**
+         * Drops the cache's contents.
+         * @return The approximate number of bytes released, or 0 if unknown.
+         */
+        long shed();
+    }
+
+    /**
+     * Thrown when an image load is refused because it would not fit in the remaining memory.
+     */
+    public static class LoadRefusedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public LoadRefusedException(String message) {
+            super(message);
+        }
+    }
+
+    private record Registration(CacheTier tier, String name, Shedder shedder) {
+    }
+
+    private final double pressureRatio;
+    private final double criticalRatio;
+    private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+    private final long maxDirectMemory = maxDirectMemory();
+    private volatile Level level = Level.NORMAL;
+    private ScheduledExecutorService monitor;
+
+    private final Map<Level, AtomicLong> transitionsInto = new EnumMap<>(Level.class);
+    private final Map<CacheTier, AtomicLong> shedBytes = new EnumMap<>(CacheTier.class);
+    private final AtomicLong degradedLoads = new AtomicLong();
+    private final AtomicLong refusedLoads = new AtomicLong();
+    private final AtomicLong outOfMemoryErrors = new AtomicLong();
+
+    /**
+     * Constructs a MemoryGovernor.
+     *
+     * @param pressureRatio Fraction of the memory limit above which the governor enters {@link Level#PRESSURE}.
+     * @param criticalRatio Fraction of the memory limit above which the governor enters {@link Level#CRITICAL}.
+     */
+    public MemoryGovernor(double pressureRatio, double criticalRatio) {
+        this.pressureRatio = pressureRatio;
+        this.criticalRatio = criticalRatio;
+        for (Level l : Level.values()) {
+            transitionsInto.put(l, new AtomicLong());
+        }
+        for (CacheTier t : CacheTier.values()) {
+            shedBytes.put(t, new AtomicLong());
+        }
+    }
+
+    /**
+     * Returns the governor shared by the whole application.
+     * @return The shared MemoryGovernor.
+     */
+    public static MemoryGovernor shared() {
+        return SHARED;
+    }
+
+    /**
+     * Installs usage thresholds and notification listeners on the heap memory pools and starts the periodic check.
+     */
+    public synchronized void start() {
+        if (monitor != null) {
+            return;
+        }
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long max = pool.getUsage().getMax();
+            if (!isTenured(pool) || max <= 0) {
+                continue;
+            }
+            pool.setUsageThreshold((long) (max * pressureRatio));
+            if (pool.isCollectionUsageThresholdSupported()) {
+                pool.setCollectionUsageThreshold((long) (max * pressureRatio));
+            }
+        }
+        NotificationEmitter emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+        emitter.addNotificationListener((notification, handback) -> {
+            String type = notification.getType();
+            if (type.equals(MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED)
+                    || type.equals(MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED)) {
+                evaluate();
+            }
+        }, null, null);
+
+        monitor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "memory-governor");
+            t.setDaemon(true);
+            return t;
+        });
+        monitor.scheduleWithFixedDelay(this::evaluate, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic check.
+     */
+    public synchronized void stop() {
+        if (monitor != null) {
+            monitor.shutdownNow();
+            monitor = null;
+        }
+    }
+
+    /**
+     * Registers a cache to be shed under memory pressure.
+     *
+     * @param tier    The cache's shedding priority.
+     * @param name    A name for log messages.
+     * @param shedder Drops the cache's contents.
+     * @return A handle that unregisters the cache when run.
+     */
+    public Runnable register(CacheTier tier, String name, Shedder shedder) {
+        Registration registration = new Registration(tier, name, shedder);
+        registrations.add(registration);
+        return () -> registrations.remove(registration);
+    }
+
+    /**
+     * Returns the current memory pressure level.
+     * @return The current Level.
+     */
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Checks whether an image load needing the given amounts of memory fits, shedding caches first if it does not.
+     *
+     * @param heapBytes   Heap bytes the load needs (e.g. for a decode bitmap).
+     * @param directBytes Off-heap bytes the load needs (e.g. for a pooled pixel buffer).
+     * @param description What is being loaded, for the log and the exception message.
+     * @throws LoadRefusedException If the load would not fit even after shedding all caches.
+     */
+    public void admit(long heapBytes, long directBytes, String description) throws LoadRefusedException {
+        if (fits(heapBytes, directBytes)) {
+            return;
+        }
+        shedUpTo(CacheTier.LISTING_CACHES);
+        if (fits(heapBytes, directBytes)) {
+            return;
+        }
+        refusedLoads.incrementAndGet();
+        String message = String.format(Locale.ROOT, "%s needs %.0f MB, but only %.0f MB heap and %.0f MB direct memory are free",
+                description, (heapBytes + directBytes) / 1e6, freeHeap() / 1e6, freeDirect() / 1e6);
+        System.err.println("Memory governor: refused load - " + message);
+        throw new LoadRefusedException(message);
+    }
+
+    /**
+     * Records that a load was decoded at reduced resolution because of memory pressure.
+     */
+    public void recordDegradedLoad() {
+        degradedLoads.incrementAndGet();
+    }
+
+    /**
+     * Records an OutOfMemoryError caught on a load path, and sheds everything to recover.
+     *
+     * @param description What was being loaded.
+     */
+    public void recordOutOfMemory(String description) {
+        outOfMemoryErrors.incrementAndGet();
+        System.err.println("Memory governor: out of memory while loading " + description);
+        shedUpTo(CacheTier.LISTING_CACHES);
+        evaluate();
+    }
+
+    /**
+     * Returns a one-line summary of the transitions and actions counted so far, for sizing -Xmx.
+     * @return The governor's statistics.
+     */
+    public String getStats() {
+        return String.format(Locale.ROOT,
+                "level %s; transitions to pressure %d, to critical %d, to normal %d; shed %.1f MB prefetched, "
+                        + "%.1f MB thumbnails, %.1f MB listings; %d degraded loads, %d refused loads, %d out of memory errors",
+                level, transitionsInto.get(Level.PRESSURE).get(), transitionsInto.get(Level.CRITICAL).get(),
+                transitionsInto.get(Level.NORMAL).get(), shedBytes.get(CacheTier.PREFETCHED_IMAGES).get() / 1e6,
+                shedBytes.get(CacheTier.THUMBNAILS).get() / 1e6, shedBytes.get(CacheTier.LISTING_CACHES).get() / 1e6,
+                degradedLoads.get(), refusedLoads.get(), outOfMemoryErrors.get());
+    }
+
+    /**
+     * Recomputes the pressure level from current usage and sheds caches when the level rises.
+     */
+    private synchronized void evaluate() {
+        double heapRatio = (double) liveHeap() / tenuredMax();
+        double directRatio = maxDirectMemory > 0 ? (double) directUsed() / maxDirectMemory : 0;
+        double ratio = Math.max(heapRatio, directRatio);
+        Level next = ratio >= criticalRatio ? Level.CRITICAL : ratio >= pressureRatio ? Level.PRESSURE : Level.NORMAL;
+        if (next == level) {
+            return;
+        }
+        Level previous = level;
+        level = next;
+        transitionsInto.get(next).incrementAndGet();
+        if (DIAGNOSTICS) {
+            System.err.printf(Locale.ROOT, "Memory governor: %s -> %s (heap %.0f%% of %.0f MB, direct %.0f%% of %.0f MB)%n",
+                    previous, next, heapRatio * 100, tenuredMax() / 1e6, directRatio * 100, maxDirectMemory / 1e6);
+        }
+        if (next == Level.PRESSURE && previous == Level.NORMAL) {
+            shedUpTo(CacheTier.THUMBNAILS);
+        } else if (next == Level.CRITICAL) {
+            shedUpTo(CacheTier.LISTING_CACHES);
+        }
+    }
+
+    /**
+     * Sheds every registered cache whose tier is at or below the given tier, in tier order.
+     */
+    private void shedUpTo(CacheTier lastTier) {
+        List<Registration> ordered = new ArrayList<>(registrations);
+        ordered.sort((a, b) -> a.tier().compareTo(b.tier()));
+        for (Registration r : ordered) {
+            if (r.tier().compareTo(lastTier) > 0) {
+                break;
+            }
+            long released = r.shedder().shed();
+            shedBytes.get(r.tier()).addAndGet(released);
+            if (DIAGNOSTICS) {
+                System.err.printf(Locale.ROOT, "Memory governor: shed %s (%.1f MB)%n", r.name(), released / 1e6);
+            }
+        }
+    }
+
+    private boolean fits(long heapBytes, long directBytes) {
+        boolean heapFits = heapBytes <= freeHeap();
+        boolean directFits = maxDirectMemory <= 0 || directBytes <= freeDirect();
+        return heapFits && directFits;
+    }
+
+    // Free memory is measured up to the critical threshold, not the hard limit,
+    // so that an admitted load does not itself tip the application over.
+    private long freeHeap() {
+        return (long) (tenuredMax() * criticalRatio) - liveHeap();
+    }
+
+    private long freeDirect() {
+        return (long) (maxDirectMemory * criticalRatio) - directUsed();
+    }
+
+    private static long maxHeap() {
+        return Runtime.getRuntime().maxMemory();
+    }
+
+    /**
+     * Returns the capacity of the tenured pools, which live data is measured against. With a fixed-size young
+     * generation this is less than the whole heap, and the tenured pools filling up is what leads to an
+     * OutOfMemoryError.
+     */
+    private static long tenuredMax() {
+        long max = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (isTenured(pool)) {
+                max += Math.max(0, pool.getUsage().getMax());
+            }
+        }
+        return max > 0 ? max : maxHeap();
+    }
+
+    /**
+     * Estimates live heap usage from the tenured pools, counting only what survived their last collection,
+     * so that garbage waiting to be collected does not count as pressure. The young pools are left out:
+     * they are emptied by every young collection, so their usage is allocation churn rather than live data.
+     */
+    private static long liveHeap() {
+        long live = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (!isTenured(pool)) {
+                continue;
+            }
+            MemoryUsage afterGc = pool.getCollectionUsage();
+            MemoryUsage current = pool.getUsage();
+            // Pools never collected yet report zero after-GC usage; fall back to current usage for those.
+            live += afterGc != null && afterGc.getUsed() > 0 ? Math.min(afterGc.getUsed(), current.getUsed()) : current.getUsed();
+        }
+        return live;
+    }
+
+    /**
+     * Returns whether a pool holds long-lived heap objects. Eden and survivor spaces are the heap pools
+     * that do not support usage thresholds, as their usage says nothing about the live data set.
+     */
+    private static boolean isTenured(MemoryPoolMXBean pool) {
+        return pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported();
+    }
+
+    private static long directUsed() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the direct memory limit: -XX:MaxDirectMemorySize if given, otherwise the JVM default (the heap limit).
+     */
+    private static long maxDirectMemory() {
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (arg.startsWith("-XX:MaxDirectMemorySize=")) {
+                String value = arg.substring(arg.indexOf('=') + 1).trim().toLowerCase(Locale.ROOT);
+                long unit = switch (value.isEmpty() ? ' ' : value.charAt(value.length() - 1)) {
+                    case 'k' -> 1024L;
+                    case 'm' -> 1024L * 1024;
+                    case 'g' -> 1024L * 1024 * 1024;
+                    default -> 1L;
+                };
+                try {
+                    return Long.parseLong(unit == 1L ? value : value.substring(0, value.length() - 1)) * unit;
+                } catch (NumberFormatException e) {
+                    break;
+                }
+            }
+        }
+        return maxHeap();
+    }
+}
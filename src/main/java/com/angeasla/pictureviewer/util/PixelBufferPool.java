@@ -0,0 +1,143 @@
+package com.angeasla.pictureviewer.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A pool of direct (off-heap) ByteBuffers used to hold decoded pixel data.
+ * Buffers are grouped into size classes, so a buffer released after showing one image can be reused
+ * for the next image of a similar size instead of allocating a new one.
+ * Size classes step in quarters of a power of two (e.g. 4, 5, 6, 7, 8 MB), which wastes at most 25% per buffer.
+ * Idle buffers are kept up to a byte limit, set with the {@code pictureviewer.pixelPool.maxIdleMB} system property.
+ */
+public class PixelBufferPool {
+
+    private static final PixelBufferPool SHARED =
+            new PixelBufferPool(Long.getLong("pictureviewer.pixelPool.maxIdleMB", 256) * 1024 * 1024);
+
+    /**
+     * A snapshot of the pool's usage counters.
+     *
+     * @param bytesInUse  Bytes held by buffers that are currently acquired.
+     * @param bytesIdle   Bytes held by released buffers waiting to be reused.
+     * @param allocations Number of buffers allocated because no idle buffer fitted.
+     * @param reuses      Number of acquisitions served by an idle buffer.
+     * @param evictions   Number of idle buffers dropped to stay within the idle limit.
+     */
+    public record Stats(long bytesInUse, long bytesIdle, long allocations, long reuses, long evictions) {
+        @Override
+        public String toString() {
+            return String.format("%.1f MB in use, %.1f MB idle, %d allocations, %d reuses, %d evictions",
+                    bytesInUse / 1e6, bytesIdle / 1e6, allocations, reuses, evictions);
+        }
+    }
+
+    private final long maxIdleBytes;
+    // Idle buffers by size class capacity. Guarded by 'this'.
+    private final TreeMap<Integer, Deque<ByteBuffer>> idle = new TreeMap<>();
+    private long bytesInUse;
+    private long bytesIdle;
+    private long allocations;
+    private long reuses;
+    private long evictions;
+
+    /**
+     * Constructs a PixelBufferPool.
+     *
+     * @param maxIdleBytes The maximum number of bytes kept in idle buffers.
+     */
+    public PixelBufferPool(long maxIdleBytes) {
+        this.maxIdleBytes = maxIdleBytes;
+    }
+
+    /**
+     * Returns the pool shared by all image display paths of the application.
+     * @return The shared PixelBufferPool.
+     */
+    public static PixelBufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Acquires a direct buffer with room for at least the requested number of bytes.
+     * The returned buffer's position is 0 and its limit is the requested size; its contents are undefined.
+     *
+     * @param bytes The number of bytes needed.
+     * @return A direct ByteBuffer whose capacity is the size class of the request.
+     */
+    public synchronized ByteBuffer acquire(int bytes) {
+        int capacity = sizeClass(bytes);
+        Deque<ByteBuffer> queue = idle.get(capacity);
+        ByteBuffer buffer;
+        if (queue != null && !queue.isEmpty()) {
+            buffer = queue.pop();
+            bytesIdle -= capacity;
+            reuses++;
+        } else {
+            buffer = ByteBuffer.allocateDirect(capacity);
+            allocations++;
+        }
+        bytesInUse += capacity;
+        buffer.clear().limit(bytes);
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #acquire(int)} to the pool. The caller must not use it afterwards.
+     *
+     * @param buffer The buffer to release.
+     */
+    public synchronized void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        bytesInUse -= capacity;
+        idle.computeIfAbsent(capacity, c -> new ArrayDeque<>()).push(buffer);
+        bytesIdle += capacity;
+        trimTo(maxIdleBytes);
+    }
+
+    /**
+     * Drops idle buffers, largest first, until at most the given number of idle bytes remain.
+     * Buffers in use are not affected.
+     *
+     * @param maxBytes The number of idle bytes to keep.
+     * @return The number of bytes released.
+     */
+    public synchronized long trimTo(long maxBytes) {
+        long released = 0;
+        while (bytesIdle > maxBytes && !idle.isEmpty()) {
+            Map.Entry<Integer, Deque<ByteBuffer>> largest = idle.lastEntry();
+            largest.getValue().pop();
+            if (largest.getValue().isEmpty()) {
+                idle.remove(largest.getKey());
+            }
+            bytesIdle -= largest.getKey();
+            released += largest.getKey();
+            evictions++;
+        }
+        return released;
+    }
+
+    /**
+     * Returns a snapshot of the pool's usage counters.
+     * @return The current Stats.
+     */
+    public synchronized Stats getStats() {
+        return new Stats(bytesInUse, bytesIdle, allocations, reuses, evictions);
+    }
+
+    /**
+     * Rounds a size up to its size class: the next quarter step of a power of two.
+     */
+    static int sizeClass(int bytes) {
+        if (bytes <= 4096) {
+            return 4096;
+        }
+        int highBit = Integer.highestOneBit(bytes - 1);
+        int step = highBit / 4;
+        long rounded = ((long) bytes + step - 1) / step * step;
+        return (int) Math.min(rounded, Integer.MAX_VALUE - 8);
+    }
+}
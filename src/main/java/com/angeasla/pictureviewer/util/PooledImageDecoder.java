@@ -0,0 +1,221 @@
+package com.angeasla.pictureviewer.util;
+
+import com.angeasla.pictureviewer.codec.DecodeRequest;
+import com.angeasla.pictureviewer.codec.DecodedImage;
+import com.angeasla.pictureviewer.codec.DecoderRegistry;
+import com.angeasla.pictureviewer.codec.ImageDecoder;
+import com.angeasla.pictureviewer.codec.ImageSource;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Decodes images into pooled, off-heap pixel buffers in premultiplied BGRA order,
+ * the layout JavaFX's {@code PixelBuffer} expects.
+ * <p>
+ * Images are decoded by the decoder the {@link DecoderRegistry} picks for their format, reduced so they are no larger
+ * than the requested size needs. Decoders write into reusable scratch images instead of allocating a new bitmap per image,
+ * and the pixels are then copied row by row into a buffer from {@link PixelBufferPool}.
+ * Browsing therefore does not create a multi-megabyte heap array per displayed image.
+ */
+public class PooledImageDecoder {
+
+    /**
+     * Decoded pixels held in a pooled direct buffer.
+     * Release the buffer with {@link PixelBufferPool#release(ByteBuffer)} once it is no longer displayed.
+     *
+     * @param width  Width of the decoded image in pixels.
+     * @param height Height of the decoded image in pixels.
+     * @param pixels Premultiplied BGRA pixels, {@code width * 4} bytes per row.
+     */
+    public record DecodedFrame(int width, int height, ByteBuffer pixels) {
+    }
+
+    // Reusable destination images for the common ImageIO types, shared by all decoding threads.
+    private static final ConcurrentLinkedQueue<BufferedImage> SCRATCH = new ConcurrentLinkedQueue<>();
+
+    private final PixelBufferPool pool;
+    private final MemoryGovernor governor;
+
+    /**
+     * Constructs a PooledImageDecoder.
+     *
+     * @param pool     The pool to take pixel buffers from.
+     * @param governor The memory governor that admits or refuses each decode.
+     */
+    public PooledImageDecoder(PixelBufferPool pool, MemoryGovernor governor) {
+        this.pool = pool;
+        this.governor = governor;
+    }
+
+    /**
+     * Decodes an image so that it covers at least the given size, without exceeding its full resolution.
+     * The image is reduced by the largest factor the chosen decoder supports that keeps it at or above the requested size.
+     *
+     * @param path      The image file to decode.
+     * @param minWidth  The width the decoded image should cover, in pixels.
+     * @param minHeight The height the decoded image should cover, in pixels.
+     * @return The decoded frame.
+     * @throws MemoryGovernor.LoadRefusedException If the decode would not fit in the remaining memory.
+     * @throws IOException If the file cannot be read or no decoder supports it.
+     */
+    public DecodedFrame decode(Path path, int minWidth, int minHeight) throws IOException {
+        return decode(path, DecodeRequest.cover(minWidth, minHeight));
+    }
+
+    /**
+     * Decodes an image, or a region of it, through the {@link DecoderRegistry}.
+     *
+     * @param path    The image file to decode.
+     * @param request The size and region needed.
+     * @return The decoded frame.
+     * @throws MemoryGovernor.LoadRefusedException If the decode would not fit in the remaining memory.
+     * @throws IOException If the file cannot be read or no decoder supports it.
+     */
+    public DecodedFrame decode(Path path, DecodeRequest request) throws IOException {
+        String name = path.getFileName().toString();
+        BufferedImage[] scratch = new BufferedImage[1];
+        ImageDecoder.Destination destination = (type, width, height) -> {
+            long frameBytes = (long) width * height * 4;
+            if (frameBytes > Integer.MAX_VALUE) {
+                throw new MemoryGovernor.LoadRefusedException(name + " is too large to display");
+            }
+            if (scratch[0] != null) {
+                SCRATCH.offer(scratch[0]); // An earlier decoder declined the image after allocating.
+            }
+            boolean reusable = type != BufferedImage.TYPE_CUSTOM;
+            scratch[0] = reusable ? takeScratch(type, width, height) : null;
+            // A reused scratch image costs no new heap; otherwise about a frame's worth is allocated for decoding.
+            governor.admit(scratch[0] != null ? 0 : frameBytes, frameBytes, name);
+            if (scratch[0] == null && reusable) {
+                scratch[0] = new BufferedImage(width, height, type);
+            }
+            return scratch[0];
+        };
+        try {
+            DecodedImage decoded = DecoderRegistry.shared().decode(ImageSource.of(path), request, destination);
+            return new DecodedFrame(decoded.width(), decoded.height(), toBgraPre(decoded.image(), decoded.width(), decoded.height()));
+        } catch (OutOfMemoryError e) {
+            scratch[0] = null; // Let the failed scratch image be collected.
+            governor.recordOutOfMemory(name);
+            throw new MemoryGovernor.LoadRefusedException(name + " does not fit in memory");
+        } finally {
+            if (scratch[0] != null) {
+                SCRATCH.offer(scratch[0]);
+            }
+        }
+    }
+
+    /**
+     * Drops the reusable scratch images so their heap memory can be collected.
+     * @return The approximate number of heap bytes released.
+     */
+    public static long clearScratch() {
+        long bytes = 0;
+        BufferedImage scratch;
+        while ((scratch = SCRATCH.poll()) != null) {
+            bytes += (long) scratch.getWidth() * scratch.getHeight() * scratch.getColorModel().getPixelSize() / 8;
+        }
+        return bytes;
+    }
+
+    /**
+     * Takes a scratch image of the given type that is large enough, or returns null if there is none.
+     */
+    private static BufferedImage takeScratch(int type, int width, int height) {
+        for (BufferedImage candidate : SCRATCH) {
+            if (candidate.getType() == type && candidate.getWidth() >= width && candidate.getHeight() >= height
+                    && SCRATCH.remove(candidate)) {
+                return candidate;
+            }
+        }
+        // Nothing fits: drop smaller scratch images of the same type so the pool does not accumulate sizes.
+        SCRATCH.removeIf(s -> s.getType() == type);
+        return null;
+    }
+
+    /**
+     * Copies the top-left width x height region of a decoded image into a pooled buffer as premultiplied BGRA.
+     */
+    private ByteBuffer toBgraPre(BufferedImage image, int width, int height) {
+        ByteBuffer buffer = pool.acquire(width * height * 4);
+        byte[] row = new byte[width * 4];
+        SampleModel sm = image.getSampleModel();
+        int type = image.getType();
+
+        if ((type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR
+                || type == BufferedImage.TYPE_BYTE_GRAY) && sm instanceof ComponentSampleModel csm) {
+            byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            int stride = csm.getScanlineStride();
+            for (int y = 0; y < height; y++) {
+                int in = y * stride;
+                for (int x = 0, out = 0; x < width; x++, out += 4) {
+                    switch (type) {
+                        case BufferedImage.TYPE_3BYTE_BGR -> {
+                            row[out] = data[in++];
+                            row[out + 1] = data[in++];
+                            row[out + 2] = data[in++];
+                            row[out + 3] = (byte) 0xFF;
+                        }
+                        case BufferedImage.TYPE_4BYTE_ABGR -> {
+                            int a = data[in++] & 0xFF;
+                            row[out] = premultiply(data[in++], a);
+                            row[out + 1] = premultiply(data[in++], a);
+                            row[out + 2] = premultiply(data[in++], a);
+                            row[out + 3] = (byte) a;
+                        }
+                        default -> {
+                            byte g = data[in++];
+                            row[out] = g;
+                            row[out + 1] = g;
+                            row[out + 2] = g;
+                            row[out + 3] = (byte) 0xFF;
+                        }
+                    }
+                }
+                buffer.put(y * width * 4, row);
+            }
+        } else if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+                && sm instanceof SinglePixelPackedSampleModel sppsm) {
+            int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            int stride = sppsm.getScanlineStride();
+            boolean opaque = type == BufferedImage.TYPE_INT_RGB;
+            for (int y = 0; y < height; y++) {
+                writeArgbRow(data, y * stride, width, opaque, row);
+                buffer.put(y * width * 4, row);
+            }
+        } else {
+            // Uncommon layouts (indexed, 16-bit, custom) go through the generic colour model conversion.
+            int[] argb = new int[width];
+            for (int y = 0; y < height; y++) {
+                image.getRGB(0, y, width, 1, argb, 0, width);
+                writeArgbRow(argb, 0, width, !image.getColorModel().hasAlpha(), row);
+                buffer.put(y * width * 4, row);
+            }
+        }
+        return buffer;
+    }
+
+    private static void writeArgbRow(int[] argb, int offset, int width, boolean opaque, byte[] row) {
+        for (int x = 0, out = 0; x < width; x++, out += 4) {
+            int p = argb[offset + x];
+            int a = opaque ? 0xFF : p >>> 24;
+            row[out] = premultiply((byte) p, a);
+            row[out + 1] = premultiply((byte) (p >> 8), a);
+            row[out + 2] = premultiply((byte) (p >> 16), a);
+            row[out + 3] = (byte) a;
+        }
+    }
+
+    private static byte premultiply(byte channel, int alpha) {
+        return alpha == 0xFF ? channel : (byte) (((channel & 0xFF) * alpha + 127) / 255);
+    }
+}
@@ -0,0 +1,67 @@
+package com.angeasla.pictureviewer.util;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The {@link ImageStatistics} kernel built on the Java Vector API.
+ * Channel extraction, luminance and the clipping tests run a full vector of pixels at a time;
+ * only the histogram increments, which are scattered by value, remain scalar. Chunks are processed in small
+ * blocks, each binned right after its vector pass, so the pixels are read from memory only once.
+ * Loaded reflectively, and only when the {@code jdk.incubator.vector} module is present.
+ */
+final class VectorStatisticsKernel implements ImageStatistics.Kernel {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    // Pixels per block: vector results are binned while the block is still in the L1 cache.
+    private static final int BLOCK_PIXELS = 1024;
+
+    @Override
+    public void accumulate(int[] argb, int length, int[] luma, long[][] histogram, long[] clipped) {
+        long[] red = histogram[ImageStatistics.RED];
+        long[] green = histogram[ImageStatistics.GREEN];
+        long[] blue = histogram[ImageStatistics.BLUE];
+        long[] lum = histogram[ImageStatistics.LUMA];
+        long shadows = 0;
+        long highlights = 0;
+        for (int block = 0; block < length; block += BLOCK_PIXELS) {
+            int end = Math.min(length, block + BLOCK_PIXELS);
+            int i = block;
+            for (int upper = block + SPECIES.loopBound(end - block); i < upper; i += SPECIES.length()) {
+                IntVector p = IntVector.fromArray(SPECIES, argb, i);
+                IntVector r = p.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+                IntVector g = p.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+                IntVector b = p.and(0xFF);
+                r.mul(54).add(g.mul(183)).add(b.mul(19)).add(128)
+                        .lanewise(VectorOperators.LSHR, 8)
+                        .intoArray(luma, i);
+                shadows += r.min(g).min(b).eq(0).trueCount();
+                highlights += r.max(g).max(b).eq(255).trueCount();
+            }
+            for (; i < end; i++) { // Tail shorter than a vector.
+                int p = argb[i];
+                int r = (p >>> 16) & 0xFF;
+                int g = (p >>> 8) & 0xFF;
+                int b = p & 0xFF;
+                luma[i] = ImageStatistics.luma(r, g, b);
+                if (Math.min(r, Math.min(g, b)) == 0) {
+                    shadows++;
+                }
+                if (Math.max(r, Math.max(g, b)) == 255) {
+                    highlights++;
+                }
+            }
+            for (int k = block; k < end; k++) {
+                int p = argb[k];
+                red[(p >>> 16) & 0xFF]++;
+                green[(p >>> 8) & 0xFF]++;
+                blue[p & 0xFF]++;
+                lum[luma[k]]++;
+            }
+        }
+        clipped[0] += shadows;
+        clipped[1] += highlights;
+    }
+}
@@ -2,8 +2,15 @@ module com.angeasla.pictureviewer {
     requires javafx.controls;
     requires javafx.fxml;
     requires org.controlsfx.controls;
+    requires transitive java.desktop; // The codec API exposes BufferedImage and Rectangle.
+    requires java.management;
+    requires jdk.zipfs;
+    requires static jdk.incubator.vector; // Optional: image statistics fall back to scalar code without it.
 
 
     opens com.angeasla.pictureviewer to javafx.fxml;
     exports com.angeasla.pictureviewer;
+    exports com.angeasla.pictureviewer.codec;
+
+    uses com.angeasla.pictureviewer.codec.ImageDecoder; // Decoder plugins, e.g. for AVIF.
 }
\ No newline at end of file
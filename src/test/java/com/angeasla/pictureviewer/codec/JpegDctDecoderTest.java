@@ -0,0 +1,270 @@
+package com.angeasla.pictureviewer.codec;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the reduced-scale JPEG decoder against ImageIO: fixtures are encoded with ImageIO, decoded at full size by
+ * ImageIO and box-filtered to the reduced size, then compared with the decoder's output within a small tolerance.
+ */
+class JpegDctDecoderTest {
+
+    // The reduced inverse DCT and the box filter agree closely; quantization and the coarser chroma of 4:2:0 files,
+    // upsampled by nearest neighbour, account for the rest. Shifting the output by a single pixel exceeds this.
+    private static final double MAX_MEAN_ERROR = 4.0;
+    private static final int MAX_ERROR = 24;
+
+    private final JpegDctDecoder decoder = new JpegDctDecoder();
+
+    @Test
+    void decodesFullColourAtEveryScale() throws IOException {
+        byte[] jpeg = encode(pattern(256, 192, BufferedImage.TYPE_INT_RGB), 1, 0, false);
+        for (int scale : new int[] {2, 4, 8}) {
+            assertMatchesReference(jpeg, scale, null);
+        }
+    }
+
+    @Test
+    void decodesSubsampledChroma() throws IOException {
+        byte[] jpeg = encode(pattern(256, 192, BufferedImage.TYPE_INT_RGB), 2, 0, false);
+        for (int scale : new int[] {2, 4, 8}) {
+            assertMatchesReference(jpeg, scale, null);
+        }
+    }
+
+    @Test
+    void decodesGrayscale() throws IOException {
+        byte[] jpeg = encode(pattern(200, 120, BufferedImage.TYPE_BYTE_GRAY), 1, 0, false);
+        for (int scale : new int[] {2, 4, 8}) {
+            assertMatchesReference(jpeg, scale, null);
+        }
+    }
+
+    @Test
+    void decodesRestartIntervals() throws IOException {
+        byte[] jpeg = encode(pattern(256, 192, BufferedImage.TYPE_INT_RGB), 2, 3, false);
+        for (int scale : new int[] {2, 4, 8}) {
+            assertMatchesReference(jpeg, scale, null);
+        }
+    }
+
+    @Test
+    void decodesOddSizes() throws IOException {
+        byte[] subsampled = encode(pattern(203, 117, BufferedImage.TYPE_INT_RGB), 2, 0, false);
+        byte[] gray = encode(pattern(77, 45, BufferedImage.TYPE_BYTE_GRAY), 1, 0, false);
+        for (int scale : new int[] {2, 4, 8}) {
+            assertMatchesReference(subsampled, scale, null);
+            assertMatchesReference(gray, scale, null);
+        }
+    }
+
+    @Test
+    void decodesRegion() throws IOException {
+        byte[] jpeg = encode(pattern(400, 300, BufferedImage.TYPE_INT_RGB), 2, 5, false);
+        assertMatchesReference(jpeg, 2, new Rectangle(37, 90, 150, 111));
+        assertMatchesReference(jpeg, 4, new Rectangle(256, 128, 144, 172)); // Touches the right and bottom edges.
+        assertMatchesReference(jpeg, 8, new Rectangle(0, 0, 64, 64));
+    }
+
+    @Test
+    void declinesFullScale() throws IOException {
+        byte[] jpeg = encode(pattern(64, 64, BufferedImage.TYPE_INT_RGB), 2, 0, false);
+        assertThrows(UnsupportedImageException.class, () -> decode(jpeg, DecodeRequest.full()));
+    }
+
+    @Test
+    void declinesProgressive() throws IOException {
+        byte[] jpeg = encode(pattern(128, 96, BufferedImage.TYPE_INT_RGB), 2, 0, true);
+        assertThrows(UnsupportedImageException.class, () -> decode(jpeg, DecodeRequest.cover(32, 24)));
+    }
+
+    @Test
+    void declinesCmyk() throws IOException {
+        WritableRaster raster = Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE, 64, 48, 4, null);
+        for (int y = 0; y < 48; y++) {
+            for (int x = 0; x < 64; x++) {
+                raster.setPixel(x, y, new int[] {x * 4, y * 5, 128, 32});
+            }
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(raster, null, null), null);
+        } finally {
+            writer.dispose();
+        }
+        byte[] jpeg = out.toByteArray();
+        assertThrows(UnsupportedImageException.class, () -> decode(jpeg, DecodeRequest.cover(16, 12)));
+    }
+
+    @Test
+    void declinesTruncated() throws IOException {
+        byte[] jpeg = encode(pattern(256, 192, BufferedImage.TYPE_INT_RGB), 2, 0, false);
+        byte[] truncated = Arrays.copyOf(jpeg, jpeg.length / 2);
+        UnsupportedImageException e = assertThrows(UnsupportedImageException.class,
+                () -> decode(truncated, DecodeRequest.cover(32, 24)));
+        assertTrue(e.getMessage().contains("truncated"), e.getMessage());
+    }
+
+    @Test
+    void picksLargestAllowedScale() {
+        assertEquals(1, JpegDctDecoder.scaleFor(1.9));
+        assertEquals(2, JpegDctDecoder.scaleFor(2));
+        assertEquals(4, JpegDctDecoder.scaleFor(7.9));
+        assertEquals(8, JpegDctDecoder.scaleFor(100));
+    }
+
+    private DecodedImage decode(byte[] jpeg, DecodeRequest request) throws IOException {
+        return decoder.decode(ImageSource.of("test.jpg", jpeg), request, ImageDecoder.Destination.NEW);
+    }
+
+    /**
+     * Decodes a JPEG at a scale, optionally restricted to a region, and compares it with ImageIO's full-size decode
+     * averaged over scale x scale cells.
+     */
+    private void assertMatchesReference(byte[] jpeg, int scale, Rectangle region) throws IOException {
+        BufferedImage reference = ImageIO.read(new ByteArrayInputStream(jpeg));
+        int width = reference.getWidth();
+        int height = reference.getHeight();
+        Rectangle area = region == null ? new Rectangle(0, 0, width, height) : region;
+        DecodeRequest request = DecodeRequest.cover(Math.max(1, area.width / scale), Math.max(1, area.height / scale));
+        DecodedImage decoded = decode(jpeg, region == null ? request : request.withRegion(region));
+
+        String what = width + "x" + height + " at 1/" + scale + (region == null ? "" : " in " + region);
+        int outX0 = area.x / scale;
+        int outY0 = area.y / scale;
+        assertEquals((area.x + area.width + scale - 1) / scale - outX0, decoded.width(), what);
+        assertEquals((area.y + area.height + scale - 1) / scale - outY0, decoded.height(), what);
+        assertEquals(width, decoded.sourceWidth(), what);
+        assertEquals(height, decoded.sourceHeight(), what);
+
+        long totalError = 0;
+        int maxError = 0;
+        for (int y = 0; y < decoded.height(); y++) {
+            for (int x = 0; x < decoded.width(); x++) {
+                int expected = boxAverage(reference, (outX0 + x) * scale, (outY0 + y) * scale, scale);
+                int actual = decoded.image().getRGB(x, y);
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    int error = Math.abs((expected >> shift & 0xFF) - (actual >> shift & 0xFF));
+                    totalError += error;
+                    maxError = Math.max(maxError, error);
+                }
+            }
+        }
+        double meanError = (double) totalError / (3.0 * decoded.width() * decoded.height());
+        assertTrue(meanError <= MAX_MEAN_ERROR, what + ": mean error " + meanError);
+        assertTrue(maxError <= MAX_ERROR, what + ": max error " + maxError);
+    }
+
+    /**
+     * Averages the pixels of a size x size cell, clipped to the image.
+     */
+    private static int boxAverage(BufferedImage image, int left, int top, int size) {
+        int right = Math.min(image.getWidth(), left + size);
+        int bottom = Math.min(image.getHeight(), top + size);
+        int r = 0;
+        int g = 0;
+        int b = 0;
+        for (int y = top; y < bottom; y++) {
+            for (int x = left; x < right; x++) {
+                int p = image.getRGB(x, y);
+                r += p >> 16 & 0xFF;
+                g += p >> 8 & 0xFF;
+                b += p & 0xFF;
+            }
+        }
+        int count = (right - left) * (bottom - top);
+        return (r + count / 2) / count << 16 | (g + count / 2) / count << 8 | (b + count / 2) / count;
+    }
+
+    /**
+     * Returns a test image: a ripple in brightness, so that every block has detail, over smooth colour gradients,
+     * since chroma subsampling legitimately loses fine colour detail.
+     */
+    private static BufferedImage pattern(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double ripple = 40 * Math.sin(x / 5.0) * Math.cos(y / 7.0);
+                int r = clamp(40 + 160.0 * x / width + ripple);
+                int g = clamp(40 + 160.0 * y / height + ripple);
+                int b = clamp(128 + ripple + 40 * Math.sin((x + y) / 40.0));
+                image.setRGB(x, y, r << 16 | g << 8 | b);
+            }
+        }
+        return image;
+    }
+
+    private static int clamp(double value) {
+        return (int) Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    /**
+     * Encodes an image with ImageIO at high quality.
+     *
+     * @param lumaSampling    The luminance sampling factor: 1 for 4:4:4, 2 for 4:2:0. Ignored for grayscale images.
+     * @param restartInterval MCUs between restart markers, or 0 for none.
+     * @param progressive     Whether to write a progressive JPEG.
+     */
+    private static byte[] encode(BufferedImage image, int lumaSampling, int restartInterval, boolean progressive)
+            throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(0.95f);
+            if (progressive) {
+                param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            }
+            IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), param);
+            String format = "javax_imageio_jpeg_image_1.0";
+            Node root = metadata.getAsTree(format);
+            Element markers = (Element) ((Element) root).getElementsByTagName("markerSequence").item(0);
+            Element frame = (Element) markers.getElementsByTagName("sof").item(0);
+            if (frame != null && image.getType() != BufferedImage.TYPE_BYTE_GRAY) {
+                Element luma = (Element) frame.getElementsByTagName("componentSpec").item(0);
+                luma.setAttribute("HsamplingFactor", Integer.toString(lumaSampling));
+                luma.setAttribute("VsamplingFactor", Integer.toString(lumaSampling));
+            }
+            if (restartInterval > 0) {
+                Element dri = new IIOMetadataNode("dri");
+                dri.setAttribute("interval", Integer.toString(restartInterval));
+                markers.insertBefore(dri, markers.getElementsByTagName("sos").item(0));
+            }
+            metadata.setFromTree(format, root);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+                writer.setOutput(stream);
+                writer.write(null, new IIOImage(image, null, metadata), param);
+            }
+            return out.toByteArray();
+        } finally {
+            writer.dispose();
+        }
+    }
+}